@@ -0,0 +1,263 @@
+package com.trianguloy.clipboardeditor;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * CRC32C and SHA-256 of a text (of its UTF-8 bytes), computed in a background thread.
+ * The text is tracked as a list of chunks: a change only marks the chunks it touches as stale, and an update only copies and rehashes those.
+ * The CRC32C of each chunk is kept and combined with the others, SHA-256 can't be combined so it is recomputed by streaming the (already encoded) chunks.
+ * <p>
+ * Public methods must be called from the main thread.
+ */
+public class Checksums {
+    private static final int CHUNK = 64 * 1024; // chars per chunk (when rebuilt)
+
+    /** Receives the checksums, in the main thread */
+    public interface Callback {
+        /** The checksums of the text (hex) */
+        void onChecksums(String crc32c, String sha256);
+    }
+
+    /**
+     * A piece of the text. The length is owned by the main thread, the rest by the background one
+     */
+    private static class Chunk {
+        final int chars; // length, in chars
+        final boolean stale; // if true, the text must be copied again (the rest is unset)
+        String text; // to encode, null once encoded
+        byte[] bytes = null; // utf-8
+        int crc; // of the bytes
+
+        Chunk(int chars, boolean stale, String text) {
+            this.chars = chars;
+            this.stale = stale;
+            this.text = text;
+        }
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Chunk> chunks = new ArrayList<>();
+
+    private Future<?> current = null; // the pending computation, if any
+    private int generation = 0; // increased on each computation/cancel, to discard superseded results
+
+    // ------------------- changes -------------------
+
+    /**
+     * Forgets the chunks, the whole text will be copied in the next update
+     */
+    public void reset(int length) {
+        chunks.clear();
+        if (length > 0) chunks.add(new Chunk(length, true, null));
+    }
+
+    /**
+     * Call when 'removed' chars starting at 'start' were replaced with 'inserted' ones (cheap, the text is not read)
+     */
+    public void change(int start, int removed, int inserted) {
+        // the affected chunks, including the chars around (so a surrogate pair is never split between chunks)
+        var from = Math.max(start - 1, 0);
+        var to = start + removed; // the first char after, included
+        var first = -1;
+        var last = -1;
+        var offset = 0;
+        for (var i = 0; i < chunks.size(); i++) {
+            var end = offset + chunks.get(i).chars;
+            if (first == -1 && from < end) first = i;
+            if (to < end || i == chunks.size() - 1) {
+                last = i;
+                break;
+            }
+            offset = end;
+        }
+        if (first == -1) first = last; // change at the end
+
+        // replace them with a single stale one
+        var chars = inserted - removed;
+        if (last != -1) {
+            for (var i = last; i >= first; i--) chars += chunks.remove(i).chars;
+        } else {
+            first = 0;
+        }
+        if (chars > 0) chunks.add(first, new Chunk(chars, true, null));
+    }
+
+    // ------------------- compute -------------------
+
+    /**
+     * Copies the stale chunks from the text, and computes the checksums in background (the previous computation, if any, is cancelled)
+     */
+    public void update(CharSequence text, Callback callback) {
+        // copy the stale parts
+        var offset = 0;
+        for (var i = 0; i < chunks.size(); i++) {
+            var chunk = chunks.get(i);
+            if (chunk.stale) {
+                chunks.remove(i);
+                var end = offset + chunk.chars;
+                var pieces = 0;
+                for (var start = offset; start < end; ) {
+                    // split in pieces, without splitting surrogate pairs
+                    var pieceEnd = Math.min(start + CHUNK, end);
+                    if (pieceEnd < end && Character.isSurrogatePair(text.charAt(pieceEnd - 1), text.charAt(pieceEnd))) pieceEnd++;
+                    chunks.add(i + pieces++, new Chunk(pieceEnd - start, false, text.subSequence(start, pieceEnd).toString()));
+                    start = pieceEnd;
+                }
+                i += pieces - 1;
+            }
+            offset += chunk.chars;
+        }
+
+        cancel();
+        var id = generation;
+        var snapshot = chunks.toArray(new Chunk[0]);
+        current = executor.submit(() -> {
+            try {
+                var digest = MessageDigest.getInstance("SHA-256");
+                var crc = 0;
+                for (var chunk : snapshot) {
+                    if (Thread.interrupted()) throw new CancellationException();
+                    if (chunk.bytes == null) {
+                        // new chunk, encode and hash it (kept for the next computations)
+                        chunk.bytes = chunk.text.getBytes(StandardCharsets.UTF_8);
+                        chunk.text = null;
+                        chunk.crc = crc32c(0, chunk.bytes);
+                    }
+                    crc = combine(crc, chunk.crc, chunk.bytes.length);
+                    digest.update(chunk.bytes);
+                }
+
+                var crc32c = String.format(Locale.US, "%08x", crc);
+                var sha256 = toHex(digest.digest());
+                handler.post(() -> {
+                    if (id != generation) return; // superseded
+                    current = null;
+                    callback.onChecksums(crc32c, sha256);
+                });
+            } catch (CancellationException ignored) {
+                // superseded
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e); // all platforms must support it
+            }
+        });
+    }
+
+    /**
+     * Cancels the current computation (if any), its result will not be delivered
+     */
+    public void cancel() {
+        generation++;
+        if (current != null) {
+            current.cancel(true);
+            current = null;
+        }
+    }
+
+    /**
+     * Cancels everything and stops the background thread
+     */
+    public void destroy() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    // ------------------- crc32c -------------------
+
+    private static final int POLY = 0x82F63B78; // castagnoli, reflected
+    private static final int[][] TABLES = new int[8][256]; // slicing-by-8
+
+    static {
+        for (var n = 0; n < 256; n++) {
+            var crc = n;
+            for (var k = 0; k < 8; k++) crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLY : crc >>> 1;
+            TABLES[0][n] = crc;
+        }
+        for (var n = 0; n < 256; n++) {
+            for (var t = 1; t < 8; t++) {
+                TABLES[t][n] = (TABLES[t - 1][n] >>> 8) ^ TABLES[0][TABLES[t - 1][n] & 0xFF];
+            }
+        }
+    }
+
+    /**
+     * @return the crc32c of the bytes, continuing from 'crc' (0 to start)
+     */
+    static int crc32c(int crc, byte[] bytes) {
+        crc = ~crc;
+        var i = 0;
+        var length = bytes.length;
+        for (; length - i >= 8; i += 8) {
+            var low = crc ^ ((bytes[i] & 0xFF) | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF) << 16 | (bytes[i + 3] & 0xFF) << 24);
+            crc = TABLES[7][low & 0xFF] ^ TABLES[6][(low >>> 8) & 0xFF] ^ TABLES[5][(low >>> 16) & 0xFF] ^ TABLES[4][low >>> 24]
+                    ^ TABLES[3][bytes[i + 4] & 0xFF] ^ TABLES[2][bytes[i + 5] & 0xFF] ^ TABLES[1][bytes[i + 6] & 0xFF] ^ TABLES[0][bytes[i + 7] & 0xFF];
+        }
+        for (; i < length; i++) crc = (crc >>> 8) ^ TABLES[0][(crc ^ bytes[i]) & 0xFF];
+        return ~crc;
+    }
+
+    /**
+     * @return the crc32c of A+B, from the crc of A, the crc of B and the length of B (same as zlib's crc32_combine)
+     */
+    static int combine(int crcA, int crcB, long lengthB) {
+        if (lengthB <= 0) return crcA;
+
+        // operator for one zero bit
+        var odd = new int[32];
+        odd[0] = POLY;
+        var row = 1;
+        for (var n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        var even = new int[32];
+        square(even, odd); // two zero bits
+        square(odd, even); // four zero bits
+
+        // apply lengthB zero bytes to crcA
+        do {
+            square(even, odd);
+            if ((lengthB & 1) != 0) crcA = times(even, crcA);
+            lengthB >>= 1;
+            if (lengthB == 0) break;
+
+            square(odd, even);
+            if ((lengthB & 1) != 0) crcA = times(odd, crcA);
+            lengthB >>= 1;
+        } while (lengthB != 0);
+
+        return crcA ^ crcB;
+    }
+
+    private static int times(int[] matrix, int vector) {
+        var sum = 0;
+        for (var i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) sum ^= matrix[i];
+        }
+        return sum;
+    }
+
+    private static void square(int[] square, int[] matrix) {
+        for (var n = 0; n < 32; n++) square[n] = times(matrix, matrix[n]);
+    }
+
+    // ------------------- utils -------------------
+
+    private static String toHex(byte[] bytes) {
+        var hex = new StringBuilder(bytes.length * 2);
+        for (var b : bytes) hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return hex.toString();
+    }
+}
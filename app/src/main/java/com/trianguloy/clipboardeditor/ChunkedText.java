@@ -0,0 +1,242 @@
+package com.trianguloy.clipboardeditor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A mutable text stored as a list of small chunks, for texts too big to be edited as a single buffer.
+ * Replacing a range only touches the chunks of that range, and nothing is materialized unless {@link #toString()} or {@link #subSequence(int, int)} are called.
+ * <p>
+ * Pure java (no android classes). Not thread safe, but {@link #snapshot()} gives a copy that can be read in another thread meanwhile.
+ */
+public class ChunkedText implements CharSequence {
+    private static final int CHUNK = 16 * 1024; // preferred chunk size, chunks are split when they grow over twice this
+
+    private final List<StringBuilder> chunks = new ArrayList<>(); // never empty
+    private final Set<StringBuilder> shared = Collections.newSetFromMap(new IdentityHashMap<>()); // chunks also in snapshots, copied before being modified
+    private int length;
+
+    // last located chunk, sequential access (like charAt loops) is O(1) thanks to this
+    private int cacheChunk = 0; // index
+    private int cacheStart = 0; // offset of its first char
+
+    public ChunkedText(CharSequence text) {
+        length = text.length();
+        for (var i = 0; i < length; i += CHUNK) {
+            chunks.add(new StringBuilder(CHUNK).append(text, i, Math.min(i + CHUNK, length)));
+        }
+        if (chunks.isEmpty()) chunks.add(new StringBuilder());
+    }
+
+    // ------------------- CharSequence -------------------
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException("index=" + index + " length=" + length);
+        locate(index);
+        return chunks.get(cacheChunk).charAt(index - cacheStart);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) throw new IndexOutOfBoundsException("start=" + start + " end=" + end + " length=" + length);
+        var builder = new StringBuilder(end - start);
+        while (start < end) {
+            locate(start);
+            var chunk = chunks.get(cacheChunk);
+            var offset = start - cacheStart;
+            var n = Math.min(end - start, chunk.length() - offset);
+            builder.append(chunk, offset, offset + n);
+            start += n;
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+
+    // ------------------- edit -------------------
+
+    /**
+     * Replaces the range [start, end) with text[textStart, textEnd)
+     */
+    public void replace(int start, int end, CharSequence text, int textStart, int textEnd) {
+        if (start < 0 || end > length || start > end) throw new IndexOutOfBoundsException("start=" + start + " end=" + end + " length=" + length);
+
+        // delete (the located chunk keeps its start, the cache remains valid)
+        var remaining = end - start;
+        while (remaining > 0) {
+            locate(start);
+            var chunk = own(cacheChunk);
+            var offset = start - cacheStart;
+            var n = Math.min(remaining, chunk.length() - offset);
+            chunk.delete(offset, offset + n);
+            length -= n;
+            remaining -= n;
+            if (chunk.length() == 0 && chunks.size() > 1) {
+                // the next chunk takes its place (and its start), unless it was the last one
+                chunks.remove(cacheChunk);
+                if (cacheChunk == chunks.size()) {
+                    cacheChunk--;
+                    cacheStart -= chunks.get(cacheChunk).length();
+                }
+            }
+        }
+
+        // insert (into the located chunk, or its split, which keep its start)
+        if (textStart < textEnd) {
+            locate(start);
+            var chunk = own(cacheChunk);
+            chunk.insert(start - cacheStart, text, textStart, textEnd);
+            length += textEnd - textStart;
+
+            // split if too big
+            if (chunk.length() > 2 * CHUNK) {
+                var index = cacheChunk;
+                for (var i = CHUNK; i < chunk.length(); i += CHUNK) {
+                    chunks.add(++index, new StringBuilder(CHUNK).append(chunk, i, Math.min(i + CHUNK, chunk.length())));
+                }
+                chunk.setLength(CHUNK);
+            }
+        }
+    }
+
+    /**
+     * @return true if this contains the same chars as the text (without materializing this)
+     */
+    public boolean contentEquals(CharSequence text) {
+        if (text.length() != length) return false;
+        var i = 0;
+        for (var chunk : chunks) {
+            for (var j = 0; j < chunk.length(); j++, i++) {
+                if (chunk.charAt(j) != text.charAt(i)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the index clamped to [0, length] and moved forward if it would split a surrogate pair
+     */
+    public int boundary(int index) {
+        index = Math.max(0, Math.min(index, length));
+        if (index > 0 && index < length && Character.isHighSurrogate(charAt(index - 1))) index++;
+        return index;
+    }
+
+    /**
+     * @return an immutable copy of this text, which can be read in another thread while this one is edited.
+     * The chunks are shared (nothing is copied now), and copied by this text when modified later.
+     */
+    public CharSequence snapshot() {
+        shared.addAll(chunks);
+        return new Snapshot(chunks.toArray(new StringBuilder[0]), length);
+    }
+
+    // ------------------- utils -------------------
+
+    /**
+     * Sets cacheChunk/cacheStart to the chunk containing index (the last one if index == length)
+     */
+    private void locate(int index) {
+        // backward
+        while (index < cacheStart) {
+            cacheChunk--;
+            cacheStart -= chunks.get(cacheChunk).length();
+        }
+        // forward
+        while (cacheChunk < chunks.size() - 1 && index >= cacheStart + chunks.get(cacheChunk).length()) {
+            cacheStart += chunks.get(cacheChunk).length();
+            cacheChunk++;
+        }
+    }
+
+    /**
+     * @return the chunk at index, replaced by a copy first if it is shared with a snapshot
+     */
+    private StringBuilder own(int index) {
+        var chunk = chunks.get(index);
+        if (shared.remove(chunk)) {
+            chunk = new StringBuilder(chunk);
+            chunks.set(index, chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Read only text of chunks that are never modified. Not thread safe (it has a cache), but independent of the text it comes from
+     */
+    private static class Snapshot implements CharSequence {
+        private final StringBuilder[] chunks;
+        private final int[] starts; // offset of the first char of each chunk
+        private final int length;
+
+        private int cacheChunk = 0; // last located chunk
+
+        Snapshot(StringBuilder[] chunks, int length) {
+            this.chunks = chunks;
+            this.length = length;
+            starts = new int[chunks.length];
+            for (var i = 1; i < chunks.length; i++) {
+                starts[i] = starts[i - 1] + chunks[i - 1].length();
+            }
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) throw new IndexOutOfBoundsException("index=" + index + " length=" + length);
+            locate(index);
+            return chunks[cacheChunk].charAt(index - starts[cacheChunk]);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) throw new IndexOutOfBoundsException("start=" + start + " end=" + end + " length=" + length);
+            var builder = new StringBuilder(end - start);
+            while (start < end) {
+                locate(start);
+                var chunk = chunks[cacheChunk];
+                var offset = start - starts[cacheChunk];
+                var n = Math.min(end - start, chunk.length() - offset);
+                builder.append(chunk, offset, offset + n);
+                start += n;
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length).toString();
+        }
+
+        /**
+         * Sets cacheChunk to the chunk containing index (sequential access is O(1), random access O(log chunks))
+         */
+        private void locate(int index) {
+            var start = starts[cacheChunk];
+            if (index >= start && index < start + chunks[cacheChunk].length()) return;
+            if (cacheChunk < chunks.length - 1 && index >= starts[cacheChunk + 1] && index < starts[cacheChunk + 1] + chunks[cacheChunk + 1].length()) {
+                cacheChunk++;
+                return;
+            }
+            var found = Arrays.binarySearch(starts, index);
+            cacheChunk = found >= 0 ? found : -found - 2;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.trianguloy.clipboardeditor;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Texts too big to be sent in an intent (binder transactions are limited to ~1MB), stored in private cache files and referenced by key.
+ * Temporary texts (read once, soon) and persistent ones (read any number of times, like from a notification) are kept apart, so one kind can't evict the other.
+ * Only the newest files of each kind are kept. The system may also remove them, so readers must handle missing ones.
+ * Disk access is blocking (avoid the main thread when possible), except for {@link #writeInBackground(Context, String, boolean)}.
+ */
+public class ClipCache {
+    private static final String DIR = "clips";
+    private static final String DIR_TEMPORARY = "temporary";
+    private static final String DIR_PERSISTENT = "persistent";
+    static final int MAX_TEMPORARY = 10; // older temporary files are deleted
+    static final int MAX_PERSISTENT = 20; // older persistent files are deleted
+
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(); // background writes, and the deletes of those
+    private static final Map<String, Future<?>> pending = new HashMap<>(); // background writes not finished yet, by key
+
+    /**
+     * Stores the text
+     *
+     * @param temporary if it is read only once
+     * @return its key
+     */
+    public static String write(Context context, String text, boolean temporary) throws IOException {
+        return write(context.getCacheDir(), text, temporary);
+    }
+
+    /**
+     * Stores the text in a background thread. Reading (or deleting) it from this process waits for the write to finish
+     *
+     * @param temporary if it is read only once
+     * @return its key
+     */
+    public static String writeInBackground(Context context, String text, boolean temporary) {
+        return writeInBackground(context.getCacheDir(), text, temporary);
+    }
+
+    /**
+     * @param temporary same as when written
+     * @return the stored text, null if not found
+     */
+    public static String read(Context context, String key, boolean temporary) {
+        return read(context.getCacheDir(), key, temporary);
+    }
+
+    /**
+     * Removes the stored text (if it exists). If still being written, it is removed after that (without waiting)
+     *
+     * @param temporary same as when written
+     */
+    public static void delete(Context context, String key, boolean temporary) {
+        delete(context.getCacheDir(), key, temporary);
+    }
+
+    // ------------------- files -------------------
+    // same as the public ones, in the given cache directory (the app one, or another for tests)
+
+    static String write(File root, String text, boolean temporary) throws IOException {
+        var key = UUID.randomUUID().toString();
+        writeFile(root, key, text, temporary);
+        return key;
+    }
+
+    static String writeInBackground(File root, String text, boolean temporary) {
+        var key = UUID.randomUUID().toString();
+        synchronized (pending) {
+            // the write removes itself once finished, after being added
+            pending.put(key, writer.submit(() -> {
+                try {
+                    writeFile(root, key, text, temporary);
+                } catch (IOException e) {
+                    Log.e("CACHE", "Unable to write " + key, e);
+                } finally {
+                    synchronized (pending) {
+                        pending.remove(key);
+                    }
+                }
+            }));
+        }
+        return key;
+    }
+
+    static String read(File root, String key, boolean temporary) {
+        awaitWrite(key);
+        return readFile(root, key, temporary);
+    }
+
+    static void delete(File root, String key, boolean temporary) {
+        synchronized (pending) {
+            if (pending.containsKey(key)) {
+                writer.execute(() -> deleteFile(root, key, temporary));
+                return;
+            }
+        }
+        deleteFile(root, key, temporary);
+    }
+
+    private static synchronized void writeFile(File root, String key, String text, boolean temporary) throws IOException {
+        var dir = getDir(root, temporary);
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Unable to create " + dir);
+
+        var file = new File(dir, key);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(text);
+        }
+
+        trim(dir, temporary ? MAX_TEMPORARY : MAX_PERSISTENT, file);
+    }
+
+    private static synchronized String readFile(File root, String key, boolean temporary) {
+        var file = getFile(root, key, temporary);
+        if (file == null || !file.isFile()) return null;
+
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            var text = new StringBuilder((int) Math.min(file.length(), Integer.MAX_VALUE - 8));
+            var buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                text.append(buffer, 0, read);
+            }
+            return text.toString();
+        } catch (IOException e) {
+            Log.e("CACHE", "Unable to read " + key, e);
+            return null;
+        }
+    }
+
+    private static synchronized void deleteFile(File root, String key, boolean temporary) {
+        var file = getFile(root, key, temporary);
+        if (file != null && !file.delete() && file.exists()) Log.e("CACHE", "Unable to delete " + key);
+    }
+
+    // ------------------- utils -------------------
+
+    /**
+     * Waits for the background write of the key, if pending
+     */
+    private static void awaitWrite(String key) {
+        Future<?> write;
+        synchronized (pending) {
+            write = pending.get(key);
+        }
+        if (write == null) return;
+        try {
+            write.get();
+        } catch (ExecutionException e) {
+            // already logged
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static File getDir(File root, boolean temporary) {
+        return new File(new File(root, DIR), temporary ? DIR_TEMPORARY : DIR_PERSISTENT);
+    }
+
+    /**
+     * @return the file of the key, null if the key is not valid
+     */
+    private static File getFile(File root, String key, boolean temporary) {
+        // keys are generated by us, but they come from intents
+        if (key == null || key.isEmpty() || key.contains("/") || key.startsWith(".")) return null;
+        return new File(getDir(root, temporary), key);
+    }
+
+    /**
+     * Deletes the oldest files, if more than max (never the newest one, even if others have its same modification time)
+     */
+    private static void trim(File dir, int max, File newest) {
+        var files = dir.listFiles();
+        if (files == null || files.length <= max) return;
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        var excess = files.length - max;
+        for (var i = 0; i < files.length && excess > 0; i++) {
+            if (files[i].equals(newest)) continue;
+            if (!files[i].delete()) Log.e("CACHE", "Unable to delete " + files[i]);
+            excess--;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.trianguloy.clipboardeditor;
+
+import android.content.ClipData;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Coerces clip items to text in a background thread (uri items are read from a stream, and big texts may take a while to copy).
+ * Only the latest load is delivered: a new one cancels (and discards) the previous one.
+ * All public methods must be called from the main thread.
+ */
+public class ClipLoader {
+
+    /** Receives the loaded text, in the main thread (null if the source had none, or failed) */
+    public interface Callback {
+        void onLoaded(String text);
+    }
+
+    /** Produces a text, in the background thread */
+    public interface Source {
+        CharSequence load();
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Context context; // to coerce uris
+
+    private Future<?> current = null; // the pending load, if any
+    private int generation = 0; // increased on each load/cancel, to discard superseded results
+
+    public ClipLoader(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * @return true if the item is cheap to coerce (plain text, not too long) and can be loaded in the main thread directly
+     */
+    public static boolean isCheap(ClipData.Item item, int maxLength) {
+        var text = item.getText();
+        return item.getUri() == null && item.getIntent() == null && (text == null || text.length() <= maxLength);
+    }
+
+    /**
+     * Coerces the item in the background, and calls the callback with the result (unless cancelled or superseded before)
+     */
+    public void load(ClipData.Item item, Callback callback) {
+        load(() -> item.coerceToText(context), callback);
+    }
+
+    /**
+     * Loads the text of the source in the background, and calls the callback with the result (unless cancelled or superseded before)
+     */
+    public void load(Source source, Callback callback) {
+        cancel();
+        var id = generation;
+        current = executor.submit(() -> {
+            var string = loadText(source);
+            if (Thread.interrupted()) return;
+
+            handler.post(() -> {
+                if (id != generation) return; // superseded
+                current = null;
+                callback.onLoaded(string);
+            });
+        });
+    }
+
+    /**
+     * Cancels the current load (if any), its result will not be delivered
+     */
+    public void cancel() {
+        generation++;
+        if (current != null) {
+            current.cancel(true);
+            current = null;
+        }
+    }
+
+    /**
+     * Cancels everything and stops the background thread
+     */
+    public void destroy() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    // ------------------- internal -------------------
+
+    /**
+     * @return the source text, null if none or if it failed (like a SecurityException from an uri)
+     */
+    private static String loadText(Source source) {
+        try {
+            var text = source.load();
+            return text == null ? null : text.toString();
+        } catch (RuntimeException e) {
+            Log.e("LOADER", "Unable to load", e);
+            return null;
+        }
+    }
+}
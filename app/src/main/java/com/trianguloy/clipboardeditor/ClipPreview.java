@@ -0,0 +1,106 @@
+package com.trianguloy.clipboardeditor;
+
+import android.content.ClipData;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.service.quicksettings.TileService;
+
+/**
+ * Short preview of the clipboard, for the quick settings tile and the home screen widget.
+ * It is computed once, when the app sees a clip change (or changes it), and stored: the tile and widget only read it.
+ * Nothing is done if there is no tile nor widget.
+ * <p>
+ * The app can't see changes done while it isn't running (and since Android 10, while it isn't focused), so it may be outdated.
+ */
+public class ClipPreview {
+    private static final String PREFS = "preview";
+    private static final String TEXT = "text";
+    private static final String TILE = "tile"; // true if the tile is added
+    private static final String WIDGET = "widget"; // true if there is at least one widget
+    private static final int MAX_CHARS = 100;
+    private static final String HIDDEN = "\u2022\u2022\u2022\u2022\u2022\u2022"; // preview of sensitive clips
+
+    /**
+     * @return the stored preview, empty if none
+     */
+    public static String get(Context context) {
+        return getPrefs(context).getString(TEXT, "");
+    }
+
+    /**
+     * Updates the preview to the clip
+     */
+    public static void update(Context context, ClipData clip) {
+        if (!isNeeded(context)) return;
+        CharSequence text = null;
+        if (clip != null && SensitiveClip.isSensitive(clip.getDescription())) {
+            // stored, so never its content
+            text = HIDDEN;
+        } else if (clip != null && clip.getItemCount() > 0) {
+            // not coerced, just the preview
+            var item = clip.getItemAt(0);
+            text = item.getText() != null ? item.getText() : item.getUri() != null ? item.getUri().toString() : null;
+        }
+        update(context, text);
+    }
+
+    /**
+     * Updates the preview to the engine clip (null for no clip)
+     */
+    public static void update(Context context, ClipboardEngine.Clip clip) {
+        update(context, clip == null ? null : clip.sensitive() ? HIDDEN : clip.text());
+    }
+
+    /**
+     * Updates the preview to the text (null for no clip), and refreshes the tile and widget if it changed
+     */
+    public static void update(Context context, CharSequence text) {
+        if (!isNeeded(context)) return;
+
+        // only the beginning is needed, without the whole text
+        var preview = text == null ? "" : text.subSequence(0, Math.min(text.length(), MAX_CHARS * 2)).toString().trim().replaceAll("\\s+", " ");
+        if (preview.length() > MAX_CHARS) preview = preview.substring(0, MAX_CHARS) + "\u2026";
+
+        var prefs = getPrefs(context);
+        if (preview.equals(prefs.getString(TEXT, ""))) return;
+        prefs.edit().putString(TEXT, preview).apply();
+
+        // refresh
+        if (prefs.getBoolean(TILE, false) && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            TileService.requestListeningState(context, new ComponentName(context, ClipTile.class));
+        }
+        if (prefs.getBoolean(WIDGET, false)) {
+            ClipWidget.updateAll(context);
+        }
+    }
+
+    /**
+     * @return true if there is a tile or widget to show the preview (if false, updating it does nothing)
+     */
+    public static boolean isNeeded(Context context) {
+        var prefs = getPrefs(context);
+        return prefs.getBoolean(TILE, false) || prefs.getBoolean(WIDGET, false);
+    }
+
+    /**
+     * The tile was added or removed
+     */
+    public static void setTileAdded(Context context, boolean added) {
+        getPrefs(context).edit().putBoolean(TILE, added).apply();
+    }
+
+    /**
+     * The first widget was added, or the last one removed
+     */
+    public static void setWidgetEnabled(Context context, boolean enabled) {
+        getPrefs(context).edit().putBoolean(WIDGET, enabled).apply();
+    }
+
+    // ------------------- utils -------------------
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
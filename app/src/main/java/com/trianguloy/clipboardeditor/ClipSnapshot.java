@@ -0,0 +1,110 @@
+package com.trianguloy.clipboardeditor;
+
+import android.content.ClipDescription;
+import android.os.Build;
+
+/**
+ * Remembers the last clip read from or written to the clipboard, when the input was equal to it.
+ * Allows to detect round-trips (like our own writes being notified back, or writing the same input again) without reading nor comparing the texts.
+ */
+public class ClipSnapshot {
+    private boolean valid = false;
+    private long timestamp = 0; // of the clip in the clipboard (Android O+ only, 0 if unknown)
+    private int inputVersion = 0; // of the input when it was equal to the clip
+    private String label = "";
+    private int length = 0; // of the text
+    private int hash = 0; // of the text
+
+    // counters of avoided round-trips
+    private int skippedReads = 0;
+    private int skippedWrites = 0;
+
+    /**
+     * Remembers the clip currently in the clipboard, equal to the input
+     *
+     * @param description  of the clip in the clipboard (for its timestamp), may be null
+     * @param inputVersion current version of the input
+     * @param label        clip label
+     * @param text         clip text (of its first item), null if not a text
+     */
+    public void set(ClipDescription description, int inputVersion, CharSequence label, CharSequence text) {
+        valid = true;
+        timestamp = getTimestamp(description);
+        this.inputVersion = inputVersion;
+        this.label = label == null ? "" : label.toString();
+        length = text == null ? -1 : text.length(); // -1 never matches
+        hash = text == null ? 0 : hash(text);
+    }
+
+    /**
+     * The input changed from one version to another, but it is still equal to the clip (like when showing another of its items).
+     * Does nothing if the snapshot wasn't of the first version
+     */
+    public void moveInput(int fromVersion, int toVersion) {
+        if (isInput(fromVersion)) inputVersion = toVersion;
+    }
+
+    /**
+     * Forgets the snapshot
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * @return true if the input wasn't modified since the snapshot
+     */
+    public boolean isInput(int inputVersion) {
+        return valid && this.inputVersion == inputVersion;
+    }
+
+    /**
+     * O(1) check, Android O+ only
+     *
+     * @return true if the clipboard clip (by its description) is the snapshot one. False if unknown
+     */
+    public boolean isClip(ClipDescription description) {
+        return valid && timestamp != 0 && getTimestamp(description) == timestamp;
+    }
+
+    /**
+     * O(n) check without materializing the text, for old devices
+     *
+     * @return true if the clip label and text are the snapshot ones
+     */
+    public boolean isClip(CharSequence label, CharSequence text) {
+        return valid && text != null && text.length() == length
+                && this.label.contentEquals(label == null ? "" : label)
+                && hash(text) == hash;
+    }
+
+    // ------------------- counters -------------------
+
+    public int skippedRead() {
+        return ++skippedReads;
+    }
+
+    public int skippedWrite() {
+        return ++skippedWrites;
+    }
+
+    // ------------------- utils -------------------
+
+    /**
+     * @return the description timestamp, 0 if unknown
+     */
+    private static long getTimestamp(ClipDescription description) {
+        return description != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ? description.getTimestamp() : 0;
+    }
+
+    /**
+     * @return same as text.toString().hashCode(), without the toString
+     */
+    private static int hash(CharSequence text) {
+        var hash = 0;
+        for (var i = 0; i < text.length(); i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,72 @@
+package com.trianguloy.clipboardeditor;
+
+import android.annotation.TargetApi;
+import android.app.AlertDialog;
+import android.os.Build;
+import android.service.quicksettings.Tile;
+import android.service.quicksettings.TileService;
+
+/**
+ * Quick settings tile, with the clipboard preview (see {@link ClipPreview}).
+ * When clicked it shows the clipboard actions, which are run by {@link Shortcuts} (the clipboard can only be read from a focused activity).
+ * It is an active tile: it is only refreshed when the preview changes.
+ */
+@TargetApi(Build.VERSION_CODES.N)
+public class ClipTile extends TileService {
+
+    @Override
+    public void onTileAdded() {
+        ClipPreview.setTileAdded(this, true);
+    }
+
+    @Override
+    public void onTileRemoved() {
+        ClipPreview.setTileAdded(this, false);
+    }
+
+    @Override
+    public void onStartListening() {
+        var tile = getQsTile();
+        if (tile == null) return;
+
+        var preview = ClipPreview.get(this);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            // preview as subtitle
+            tile.setLabel(getString(R.string.tile_name));
+            tile.setSubtitle(preview);
+        } else {
+            // no subtitle, preview as label
+            tile.setLabel(preview.isEmpty() ? getString(R.string.tile_name) : preview);
+        }
+        tile.setState(preview.isEmpty() ? Tile.STATE_INACTIVE : Tile.STATE_ACTIVE);
+        tile.updateTile();
+    }
+
+    @Override
+    public void onClick() {
+        showDialog(new AlertDialog.Builder(this)
+                .setTitle(R.string.tile_name)
+                .setItems(new CharSequence[]{
+                        getString(R.string.shortcut_clear),
+                        getString(R.string.shortcut_trim),
+                        getString(R.string.shortcut_notify),
+                }, (dialog, which) -> {
+                    if (which == 0) run(ClipWidget.REQUEST_CLEAR, null, false);
+                    else if (which == 1) run(ClipWidget.REQUEST_TRIM, Transform.TRIM, false);
+                    else run(ClipWidget.REQUEST_NOTIFY, null, true);
+                })
+                .create());
+    }
+
+    /**
+     * Runs the action in {@link Shortcuts}, and collapses the panel
+     */
+    private void run(int requestCode, Transform transform, boolean notify) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+            // the intent version is not allowed anymore
+            startActivityAndCollapse(Shortcuts.newPendingIntent(this, requestCode, transform, notify));
+        } else {
+            startActivityAndCollapse(Shortcuts.newIntent(this, transform, notify));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.trianguloy.clipboardeditor;
+
+import android.content.ClipData;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Sends clips between our own components through intents.
+ * Small clips are sent inline, big ones (which would exceed the binder transaction limit, ~1MB) are spilled to the {@link ClipCache} and sent by key, as plain text.
+ * Temporary spills are written in background: they are read once, by this same process, which waits for the write if needed.
+ */
+public class ClipTransport {
+    public static final int INLINE_MAX_CHARS = 100_000; // bigger clips (all their texts together) are spilled
+    private static final String EXTRA_KEY = "clipKey"; // key of a spilled text
+    private static final String EXTRA_LABEL = "clipLabel"; // label of a spilled text
+    private static final String EXTRA_TEMPORARY = "clipTemporary"; // true if the spilled text is read only once
+
+    /**
+     * Puts the clip in the intent
+     *
+     * @param text      the clip text, sent instead of the clip if too big
+     * @param temporary if the spilled text is read only once (and can be deleted then), it is then written in background
+     * @return the key of the spilled text, null if sent inline
+     */
+    public static String put(Context context, Intent intent, ClipData clip, String text, boolean temporary) throws IOException {
+        // everything that is parceled
+        var texts = new ArrayList<CharSequence>();
+        texts.add(clip.getDescription().getLabel());
+        for (var i = 0; i < clip.getItemCount(); i++) {
+            var item = clip.getItemAt(i);
+            texts.add(item.getText());
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) texts.add(item.getHtmlText());
+            if (item.getUri() != null) texts.add(item.getUri().toString());
+            if (item.getIntent() != null) texts.add(item.getIntent().toUri(0));
+        }
+
+        if (fitsInline(texts)) {
+            intent.putExtra(context.getPackageName(), clip);
+            return null;
+        }
+
+        var key = temporary ? ClipCache.writeInBackground(context, text, true) : ClipCache.write(context, text, false);
+        var label = clip.getDescription().getLabel();
+        intent.putExtra(EXTRA_KEY, key);
+        intent.putExtra(EXTRA_LABEL, label == null ? "" : label.toString());
+        intent.putExtra(EXTRA_TEMPORARY, temporary);
+        return key;
+    }
+
+    /**
+     * Reads the clip in the intent (blocking if it was spilled). Temporary spilled texts are deleted
+     *
+     * @return the clip, null if none (or if the spilled text is missing, see {@link #getKey(Intent)})
+     */
+    public static ClipData read(Context context, Intent intent) {
+        var key = getKey(intent);
+        if (key == null) return intent.getParcelableExtra(context.getPackageName());
+
+        var temporary = isTemporary(intent);
+        var text = ClipCache.read(context, key, temporary);
+        if (temporary) ClipCache.delete(context, key, true);
+        return text == null ? null : ClipData.newPlainText(getLabel(intent), text);
+    }
+
+    /**
+     * @param texts of a clip, null ones are skipped
+     * @return true if they are small enough, all together, to be sent inline
+     */
+    public static boolean fitsInline(Iterable<? extends CharSequence> texts) {
+        long total = 0;
+        for (var text : texts) {
+            if (text == null) continue;
+            total += text.length();
+            if (total > INLINE_MAX_CHARS) return false;
+        }
+        return true;
+    }
+
+    // ------------------- spilled -------------------
+
+    /**
+     * @return the key of the spilled text in the intent, null if none (inline or nothing)
+     */
+    public static String getKey(Intent intent) {
+        return intent.getStringExtra(EXTRA_KEY);
+    }
+
+    /**
+     * @return the label of the spilled text in the intent
+     */
+    public static String getLabel(Intent intent) {
+        var label = intent.getStringExtra(EXTRA_LABEL);
+        return label == null ? "" : label;
+    }
+
+    /**
+     * @return true if the spilled text in the intent is read only once
+     */
+    public static boolean isTemporary(Intent intent) {
+        return intent.getBooleanExtra(EXTRA_TEMPORARY, false);
+    }
+}
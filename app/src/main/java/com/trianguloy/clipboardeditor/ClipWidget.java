@@ -0,0 +1,68 @@
+package com.trianguloy.clipboardeditor;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.widget.RemoteViews;
+
+/**
+ * Home screen widget, with the clipboard preview (see {@link ClipPreview}) and buttons for the clipboard actions.
+ * The actions are run by {@link Shortcuts}, clicking the preview opens the editor.
+ * There are no periodic updates: widgets are only updated when the preview changes.
+ */
+public class ClipWidget extends AppWidgetProvider {
+    // pending intents request codes, one for each action
+    public static final int REQUEST_CLEAR = 0;
+    public static final int REQUEST_TRIM = 1;
+    public static final int REQUEST_NOTIFY = 2;
+    private static final int REQUEST_EDITOR = 3;
+
+    @Override
+    public void onEnabled(Context context) {
+        ClipPreview.setWidgetEnabled(context, true);
+    }
+
+    @Override
+    public void onDisabled(Context context) {
+        ClipPreview.setWidgetEnabled(context, false);
+    }
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        ClipPreview.setWidgetEnabled(context, true); // in case it was added before this was tracked
+        appWidgetManager.updateAppWidget(appWidgetIds, getViews(context));
+    }
+
+    /**
+     * Updates all the widgets with the current preview
+     */
+    public static void updateAll(Context context) {
+        var manager = AppWidgetManager.getInstance(context);
+        var ids = manager.getAppWidgetIds(new ComponentName(context, ClipWidget.class));
+        if (ids.length > 0) manager.updateAppWidget(ids, getViews(context));
+    }
+
+    /**
+     * @return the widget views, same for all of them
+     */
+    private static RemoteViews getViews(Context context) {
+        var views = new RemoteViews(context.getPackageName(), R.layout.clip_widget);
+
+        // preview
+        var preview = ClipPreview.get(context);
+        views.setTextViewText(R.id.widget_preview, preview.isEmpty() ? context.getString(R.string.widget_empty) : preview);
+        var editor = new Intent(context, Editor.class).addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        views.setOnClickPendingIntent(R.id.widget_preview, PendingIntent.getActivity(context, REQUEST_EDITOR, editor, PendingIntent.FLAG_UPDATE_CURRENT | (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0)));
+
+        // actions
+        views.setOnClickPendingIntent(R.id.widget_clear, Shortcuts.newPendingIntent(context, REQUEST_CLEAR, null, false));
+        views.setOnClickPendingIntent(R.id.widget_trim, Shortcuts.newPendingIntent(context, REQUEST_TRIM, Transform.TRIM, false));
+        views.setOnClickPendingIntent(R.id.widget_notify, Shortcuts.newPendingIntent(context, REQUEST_NOTIFY, null, true));
+
+        return views;
+    }
+}
@@ -0,0 +1,80 @@
+package com.trianguloy.clipboardeditor;
+
+/**
+ * Clipboard operations without any UI: read, write, clear, transform and statistics.
+ * Pure java (no android classes), the clipboard itself is abstracted (see {@link SystemClipboard} for the real one).
+ */
+public class ClipboardEngine {
+
+    /** A clipboard text, with its label, and whether it is sensitive (its content must not be shown nor kept) */
+    public record Clip(String label, String text, boolean sensitive) {
+        public Clip(String label, String text) {
+            this(label, text, false);
+        }
+    }
+
+    /** The clipboard */
+    public interface Clipboard {
+        /** @return the current clip, coerced to text, or null if there is none (or it can't be read) */
+        Clip read();
+
+        /** Replaces the current clip */
+        void write(Clip clip);
+
+        /** Replaces the text of the current clip, keeping everything else (label, other items, mime types, flags) */
+        void replaceText(String text);
+
+        /** Removes the current clip */
+        void clear();
+    }
+
+    private final Clipboard clipboard;
+
+    public ClipboardEngine(Clipboard clipboard) {
+        this.clipboard = clipboard;
+    }
+
+    /**
+     * @return the current clip, or null if there is none
+     */
+    public Clip read() {
+        return clipboard.read();
+    }
+
+    /**
+     * Replaces the current clip
+     */
+    public void write(Clip clip) {
+        clipboard.write(clip);
+    }
+
+    /**
+     * Removes the current clip
+     */
+    public void clear() {
+        clipboard.clear();
+    }
+
+    /**
+     * Applies the transformation to the current clip text (keeping the rest of the clip)
+     *
+     * @return the new clip, or null if there was none (nothing was done)
+     */
+    public Clip transform(Transform transform) {
+        var clip = clipboard.read();
+        if (clip == null) return null;
+
+        var transformed = new Clip(clip.label(), transform.apply(clip.text()), clip.sensitive());
+        if (!transformed.text().equals(clip.text())) clipboard.replaceText(transformed.text());
+        return transformed;
+    }
+
+    /**
+     * @return the statistics of the text
+     */
+    public static TextStatistics statistics(CharSequence text) {
+        var statistics = new TextStatistics();
+        statistics.reset(text);
+        return statistics;
+    }
+}
@@ -0,0 +1,153 @@
+package com.trianguloy.clipboardeditor;
+
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Process-wide clipboard monitor, with a single listener registration shared by all the subscribers (editors) and an optional capture sink (history).
+ * The listener is only registered while there is someone to notify, so there is no work at all when nobody is subscribed.
+ * <p>
+ * This is not a background service: since Android 10 only the focused app (or the default keyboard) can read the clipboard, so a service wouldn't receive anything useful.
+ * The sink is kept while the process is alive, and captures the changes done while any of our activities is focused.
+ * <p>
+ * All methods must be called from the main thread.
+ */
+public class ClipboardMonitor {
+    private static final int LOG_EVERY = 20; // the dispatch cost is logged once every this number of events
+
+    /** Receives clipboard changes */
+    public interface Subscriber {
+        void onClipChanged(Event event);
+    }
+
+    /** Receives the clips not produced by a subscriber (see {@link Event#ignore()}) */
+    public interface Sink {
+        void onClip(ClipData clip);
+    }
+
+    /**
+     * A clipboard change, shared by all the receivers: the clip is only read (once) if someone asks for it
+     */
+    public class Event {
+        private ClipData clip = null;
+        private boolean read = false;
+        private boolean ignored = false;
+
+        /** @return the new clip, may be null */
+        public ClipData getClip() {
+            if (!read) {
+                read = true;
+                clip = clipboard.getPrimaryClip();
+            }
+            return clip;
+        }
+
+        /** Marks this change as not to be captured (like the subscriber's own write), the sink won't receive it */
+        public void ignore() {
+            ignored = true;
+        }
+    }
+
+    private static ClipboardMonitor instance = null;
+
+    /**
+     * @return the monitor of this process
+     */
+    public static ClipboardMonitor get(Context context) {
+        if (instance == null) instance = new ClipboardMonitor(context);
+        return instance;
+    }
+
+    private final Context context; // application
+    private final ClipboardManager clipboard;
+    private final ClipboardManager.OnPrimaryClipChangedListener listener = this::dispatch;
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private Sink sink = null;
+    private boolean registered = false;
+
+    // dispatch cost
+    private long events = 0;
+    private long totalNanos = 0;
+    private long maxNanos = 0;
+
+    private ClipboardMonitor(Context context) {
+        this.context = context.getApplicationContext();
+        clipboard = (ClipboardManager) this.context.getSystemService(Context.CLIPBOARD_SERVICE);
+    }
+
+    // ------------------- public -------------------
+
+    /**
+     * Starts notifying changes to the subscriber (remember to unsubscribe it)
+     */
+    public void subscribe(Subscriber subscriber) {
+        if (!subscribers.contains(subscriber)) subscribers.add(subscriber);
+        updateRegistration();
+    }
+
+    /**
+     * Stops notifying changes to the subscriber
+     */
+    public void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        updateRegistration();
+    }
+
+    /**
+     * Sets the sink for all the changes, null to remove it
+     */
+    public void setSink(Sink sink) {
+        this.sink = sink;
+        updateRegistration();
+    }
+
+    /**
+     * Sends to the sink (if any) a clip read outside a change event, like when focused (changes done meanwhile are not notified)
+     */
+    public void capture(ClipData clip) {
+        if (sink != null) sink.onClip(clip);
+    }
+
+    // ------------------- internal -------------------
+
+    /**
+     * Registers the listener if there is someone to notify, unregisters it otherwise
+     */
+    private void updateRegistration() {
+        var needed = sink != null || !subscribers.isEmpty();
+        if (needed == registered) return;
+        registered = needed;
+        if (needed) clipboard.addPrimaryClipChangedListener(listener);
+        else clipboard.removePrimaryClipChangedListener(listener);
+        Log.d("MONITOR", needed ? "Registered" : "Unregistered");
+    }
+
+    /**
+     * Notifies a change to all the subscribers, then to the sink (and updates the preview, if needed)
+     */
+    private void dispatch() {
+        var start = System.nanoTime();
+
+        var event = new Event();
+        // copy, subscribers may unsubscribe while notified
+        for (var subscriber : subscribers.toArray(new Subscriber[0])) {
+            subscriber.onClipChanged(event);
+        }
+        if (sink != null && !event.ignored) sink.onClip(event.getClip());
+        if (ClipPreview.isNeeded(context)) ClipPreview.update(context, event.getClip());
+
+        // cost (in the main thread, including the receivers work)
+        var nanos = System.nanoTime() - start;
+        events++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        if (events % LOG_EVERY == 1) {
+            Log.d("MONITOR", "Event " + events + ": " + nanos / 1000 + "us (avg " + totalNanos / events / 1000 + "us, max " + maxNanos / 1000 + "us)");
+        }
+    }
+}
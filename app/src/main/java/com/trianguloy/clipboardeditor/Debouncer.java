@@ -0,0 +1,69 @@
+package com.trianguloy.clipboardeditor;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Coalesces multiple requests into a single run of an action.
+ * The action runs (in the main thread) once no new requests were made for 'delay' ms, but never later than 'maxLatency' ms after the first pending request.
+ */
+public class Debouncer {
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flush = this::flush;
+
+    private final Runnable action; // what to run
+    private final long maxLatency; // max ms between the first request and the run
+    private long firstRequest = -1; // uptime of the first pending request, -1 if none
+
+    /**
+     * @param maxLatency max ms between the first pending request and the action run
+     * @param action     the action to run
+     */
+    public Debouncer(long maxLatency, Runnable action) {
+        this.maxLatency = maxLatency;
+        this.action = action;
+    }
+
+    /**
+     * Requests the action to run after 'delay' ms, replacing the previous pending request (if any).
+     * A delay of 0 or less runs it now
+     */
+    public void request(long delay) {
+        if (delay <= 0) {
+            cancel();
+            action.run();
+            return;
+        }
+
+        var now = SystemClock.uptimeMillis();
+        if (firstRequest < 0) firstRequest = now;
+
+        handler.removeCallbacks(flush);
+        handler.postDelayed(flush, Math.max(0, Math.min(delay, firstRequest + maxLatency - now)));
+    }
+
+    /**
+     * If there is a pending request, runs the action now
+     */
+    public void flush() {
+        if (!isPending()) return;
+        cancel();
+        action.run();
+    }
+
+    /**
+     * Discards the pending request, if any
+     */
+    public void cancel() {
+        handler.removeCallbacks(flush);
+        firstRequest = -1;
+    }
+
+    /**
+     * @return true if there is a pending request
+     */
+    public boolean isPending() {
+        return firstRequest >= 0;
+    }
+}
@@ -0,0 +1,337 @@
+package com.trianguloy.clipboardeditor;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Autosaved draft of the inputs, to restore them if the process is killed.
+ * A base file has the full inputs, and a log file the changes done after it (so each save only appends the new changes).
+ * The base is rewritten (atomically, with a temp file and a rename) when the log gets too big, or when the inputs are replaced without changes.
+ * Both files have a generation number, so a log is never applied to a different base.
+ * <p>
+ * Public methods must be called from the main thread, disk access is done in a background thread.
+ */
+public class Draft {
+    private static final String BASE = "draft.base";
+    private static final String LOG = "draft.log";
+    private static final int COMPACT_MIN_CHARS = 64 * 1024; // the base isn't rewritten if the log is smaller than this
+    private static final int CHANGE_OVERHEAD = 13; // bytes of a change without its text
+
+    public static final int CONTENT = 0; // field of the content input
+    public static final int LABEL = 1; // field of the label input
+
+    /** The inputs (the content must not change once given, like a snapshot, it is written in the background thread) */
+    public record State(String label, CharSequence content) {
+    }
+
+    /** Provides the current inputs, in the main thread */
+    public interface Source {
+        State get();
+    }
+
+    /** Receives the restored inputs, in the main thread */
+    public interface Callback {
+        void onRestored(State state);
+    }
+
+    /** What was read from the files, and the info to continue them */
+    private record Restored(State state, int generation, long logChars, boolean validLog) {
+    }
+
+    /** A change of a field: 'removed' chars from 'start' were replaced with 'inserted' */
+    private record Change(int field, int start, int removed, String inserted) {
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final File base;
+    private final File log;
+
+    private final List<Change> pending = new ArrayList<>(); // changes not saved yet
+    private boolean dirty = false; // true if there are changes not saved yet
+    private boolean needsBase = true; // if true the next save rewrites the base (changes can't be appended)
+    private int generation = 0; // of the current base
+    private long baseChars = 0; // size of the current base
+    private long logChars = 0; // size of the current log (approximated)
+    private int rewrites = 0; // bases written and clears, a restore started before one of them is obsolete
+
+    public Draft(Context context) {
+        var dir = context.getApplicationContext().getFilesDir();
+        base = new File(dir, BASE);
+        log = new File(dir, LOG);
+    }
+
+    // ------------------- public -------------------
+
+    /**
+     * Records a change of the field
+     */
+    public void change(int field, int start, int removed, String inserted) {
+        dirty = true;
+        if (needsBase) return; // will be included in the base
+        pending.add(new Change(field, start, removed, inserted));
+        logChars += inserted.length() + CHANGE_OVERHEAD;
+    }
+
+    /**
+     * The inputs were replaced without recording the changes, the next save will rewrite the base
+     */
+    public void invalidate() {
+        dirty = true;
+        needsBase = true;
+        pending.clear();
+    }
+
+    /**
+     * Saves the changes since the last save (if any)
+     *
+     * @param source to get the full inputs, only if needed
+     */
+    public void save(Source source) {
+        if (!dirty) return;
+        dirty = false;
+
+        if (needsBase || logChars > Math.max(COMPACT_MIN_CHARS, baseChars)) {
+            // full
+            var state = source.get();
+            var newGeneration = ++generation;
+            needsBase = false;
+            pending.clear();
+            baseChars = state.label().length() + state.content().length();
+            logChars = 0;
+            rewrites++;
+            execute(() -> writeBase(newGeneration, state));
+        } else if (!pending.isEmpty()) {
+            // incremental
+            var changes = new ArrayList<>(pending);
+            pending.clear();
+            execute(() -> appendLog(changes));
+        }
+    }
+
+    /**
+     * Removes the draft (the inputs don't need to be restored)
+     */
+    public void clear() {
+        dirty = false;
+        needsBase = true;
+        pending.clear();
+        rewrites++;
+        execute(() -> {
+            if (!log.delete() && log.exists()) Log.e("DRAFT", "Unable to delete log");
+            if (!base.delete() && base.exists()) Log.e("DRAFT", "Unable to delete base");
+        });
+    }
+
+    /**
+     * Reads the draft in background. Changes recorded until {@link #restored()} are ignored
+     *
+     * @param callback receives the saved inputs, null if none (or if the draft was saved or cleared meanwhile)
+     */
+    public void restore(Callback callback) {
+        var id = rewrites;
+        execute(() -> {
+            var restored = read();
+            handler.post(() -> {
+                if (executor.isShutdown()) return; // destroyed
+                if (restored == null || id != rewrites) {
+                    // nothing, or replaced meanwhile
+                    callback.onRestored(null);
+                    return;
+                }
+                generation = restored.generation();
+                logChars = restored.logChars();
+                baseChars = restored.state().label().length() + restored.state().content().length();
+                needsBase = !restored.validLog(); // the base will be rewritten instead
+                callback.onRestored(restored.state());
+            });
+        });
+    }
+
+    /**
+     * The restored inputs were set: the changes done to set them are already in the draft
+     */
+    public void restored() {
+        dirty = false;
+        pending.clear();
+    }
+
+    /**
+     * Stops the background thread once the pending writes finish (later calls do nothing)
+     */
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    // ------------------- disk -------------------
+
+    /* Base format:
+     * int generation
+     * string label
+     * string content
+     *
+     * Log format:
+     * int generation
+     * changes:
+     *   byte field
+     *   int start
+     *   int removed
+     *   string inserted
+     *
+     * string format:
+     * int bytes
+     * byte[] (utf-8)
+     */
+
+    /**
+     * Reads the base and applies the log
+     *
+     * @return the draft, null if none
+     */
+    private Restored read() {
+        if (!base.exists()) return null;
+
+        int generation;
+        long logChars = 0;
+        String label;
+        StringBuilder content;
+        try (var in = new DataInputStream(new BufferedInputStream(new FileInputStream(base)))) {
+            generation = in.readInt();
+            var maxBytes = base.length();
+            label = readString(in, maxBytes);
+            content = new StringBuilder(readString(in, maxBytes));
+        } catch (IOException e) {
+            // the base is written atomically, this shouldn't happen
+            Log.e("DRAFT", "Unable to read base", e);
+            return null;
+        }
+        var labelBuilder = new StringBuilder(label);
+        var validLog = false; // if new changes can be appended to the log
+
+        // apply the changes (a corrupted tail, like an interrupted write, is discarded)
+        if (log.exists()) {
+            try (var in = new DataInputStream(new BufferedInputStream(new FileInputStream(log)))) {
+                var maxBytes = log.length();
+                if (in.readInt() == generation) {
+                    int field;
+                    while ((field = in.read()) != -1) {
+                        var start = in.readInt();
+                        var removed = in.readInt();
+                        var inserted = readString(in, maxBytes);
+                        var text = field == LABEL ? labelBuilder : content;
+                        if (start < 0 || removed < 0 || start + removed > text.length()) throw new IOException("Invalid change");
+                        text.replace(start, start + removed, inserted);
+                        logChars += inserted.length() + CHANGE_OVERHEAD;
+                    }
+                    validLog = true;
+                }
+            } catch (EOFException e) {
+                // corrupted tail
+            } catch (IOException e) {
+                Log.e("DRAFT", "Unable to read log", e);
+            }
+        }
+
+        return new Restored(new State(labelBuilder.toString(), content.toString()), generation, logChars, validLog);
+    }
+
+    /**
+     * Replaces the base (atomically), and starts a new log for it
+     */
+    private void writeBase(int generation, State state) {
+        try {
+            writeAtomically(base, out -> {
+                out.writeInt(generation);
+                writeString(out, state.label());
+                writeString(out, state.content().toString());
+            });
+            writeAtomically(log, out -> out.writeInt(generation));
+        } catch (IOException e) {
+            Log.e("DRAFT", "Unable to write base", e);
+        }
+    }
+
+    /**
+     * Appends the changes to the log, in a single write
+     */
+    private void appendLog(List<Change> changes) {
+        try {
+            var bytes = new ByteArrayOutputStream();
+            var body = new DataOutputStream(bytes);
+            for (var change : changes) {
+                body.writeByte(change.field);
+                body.writeInt(change.start);
+                body.writeInt(change.removed);
+                writeString(body, change.inserted);
+            }
+
+            try (var out = new FileOutputStream(log, true)) {
+                bytes.writeTo(out);
+                out.getFD().sync();
+            }
+        } catch (IOException e) {
+            Log.e("DRAFT", "Unable to append changes", e);
+        }
+    }
+
+    /**
+     * Runs the disk task in the background thread, unless destroyed
+     */
+    private void execute(Runnable task) {
+        if (!executor.isShutdown()) executor.execute(task);
+    }
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes the file into a temporary one, then replaces it (so it is never partially written)
+     */
+    private static void writeAtomically(File file, Writer writer) throws IOException {
+        var temp = new File(file.getPath() + ".tmp");
+        try (var stream = new FileOutputStream(temp)) {
+            var out = new DataOutputStream(new BufferedOutputStream(stream));
+            writer.write(out);
+            out.flush();
+            stream.getFD().sync();
+        }
+        if (!temp.renameTo(file)) throw new IOException("Unable to rename " + temp);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        var bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param maxBytes size of the file, a longer string is corrupted (and isn't allocated)
+     */
+    private static String readString(DataInputStream in, long maxBytes) throws IOException {
+        var length = in.readInt();
+        if (length < 0) throw new IOException("Invalid string");
+        if (length > maxBytes) throw new EOFException(); // corrupted tail
+        var bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
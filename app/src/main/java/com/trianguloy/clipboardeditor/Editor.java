@@ -5,55 +5,113 @@ import static android.view.View.GONE;
 import static android.view.View.NOT_FOCUSABLE;
 import static android.view.View.VISIBLE;
 import static com.trianguloy.clipboardeditor.Preferences.Pref.CAPITALIZE;
+import static com.trianguloy.clipboardeditor.Preferences.Pref.CHECKSUMS;
+import static com.trianguloy.clipboardeditor.Preferences.Pref.HISTORY;
+import static com.trianguloy.clipboardeditor.Preferences.Pref.HISTORY_MAX_COUNT;
+import static com.trianguloy.clipboardeditor.Preferences.Pref.HISTORY_MAX_KB;
+import static com.trianguloy.clipboardeditor.Preferences.Pref.LARGE_THRESHOLD;
+import static com.trianguloy.clipboardeditor.Preferences.Pref.METRICS;
+import static com.trianguloy.clipboardeditor.Preferences.Pref.PROCESS_ACTIONS;
+import static com.trianguloy.clipboardeditor.Preferences.Pref.SENSITIVE_CLEAR_DELAY;
 import static com.trianguloy.clipboardeditor.Preferences.Pref.SHOW_KEYBOARD;
 import static com.trianguloy.clipboardeditor.Preferences.Pref.STATISTICS;
 import static com.trianguloy.clipboardeditor.Preferences.Pref.SYNC_BTN_CI;
 import static com.trianguloy.clipboardeditor.Preferences.Pref.SYNC_BTN_IC;
 import static com.trianguloy.clipboardeditor.Preferences.Pref.SYNC_EXTERNAL;
 import static com.trianguloy.clipboardeditor.Preferences.Pref.SYNC_INPUT;
+import static com.trianguloy.clipboardeditor.Preferences.Pref.SYNC_INPUT_DELAY;
 import static com.trianguloy.clipboardeditor.Preferences.Pref.SYNC_PAUSE;
 import static com.trianguloy.clipboardeditor.Preferences.Pref.SYNC_START;
+import static com.trianguloy.clipboardeditor.Preferences.Pref.UNDO_MAX_KB;
 
 import android.Manifest;
 import android.app.Activity;
 import android.app.AlertDialog;
-import android.app.Notification;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.content.ClipData;
+import android.content.ClipDescription;
 import android.content.ClipboardManager;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.Editable;
 import android.text.InputType;
+import android.text.Spanned;
+import android.text.format.DateUtils;
+import android.text.style.BackgroundColorSpan;
 import android.util.Log;
+import android.util.SparseArray;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.view.Window;
 import android.view.inputmethod.InputMethodManager;
+import android.widget.ArrayAdapter;
+import android.widget.CheckBox;
 import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.ScrollView;
 import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * The main activity, a clipboard editor
  */
 public class Editor extends Activity {
-    private static final String CHANNEL_ID = "text"; // id for the channel for notifications
     private static final int NOTIFICATIONS_REQUEST_CODE = 1;
+    private static final int SYNC_INPUT_MAX_LATENCY = 2000; // max ms that an input change can wait before being synced to the clipboard
+    private static final int SYNC_LOAD_MAX_LENGTH = 100_000; // plain texts longer than this are loaded in background
+    private static final int LARGE_PAGE = 20_000; // large mode: chars loaded each time the content input window is moved
+    private static final int LARGE_WINDOW = 3 * LARGE_PAGE; // large mode: max chars in the content input window
+    private static final int HISTORY_RESULTS = 200; // max history entries displayed
+    private static final int FIND_DELAY = 300; // ms to wait for more changes before searching again
+    private static final int FIND_MAX_LATENCY = 1000; // max ms a search can be delayed by changes
+    private static final int FIND_MAX_HIGHLIGHTS = 1000; // matches highlighted (the others are only counted)
+    private static final int FIND_HIGHLIGHT_COLOR = 0x80FFC107;
+    private static final int UNDO_CONTENT = 0; // undo field of the content input
+    private static final int UNDO_LABEL = 1; // undo field of the label input
+    private static final int DRAFT_DELAY = 1000; // ms to wait for more changes before saving the draft
+    private static final int DRAFT_MAX_LATENCY = 5000; // max ms a change can wait before being saved in the draft
+    private static final int CHECKSUMS_DELAY = 500; // ms to wait for more changes before computing the checksums
+    private static final int CHECKSUMS_MAX_LATENCY = 2000; // max ms the checksums can be delayed by changes
 
     // ------------------- data -------------------
 
     // classes
     private ClipboardManager clipboard; // system clipboard
-    private NotificationManager notification; // system notifications
+    private Notifications notifications; // clip notifications
     private Preferences prefs; // preferences wrapper
+    private ClipLoader clipLoader; // background clip coercion
+    private Finder finder; // background find/replace
+    private final Debouncer findUpdate = new Debouncer(FIND_MAX_LATENCY, this::find); // coalesces changes into a single search
+    private History history; // clipboard history, null until needed (see getHistory)
+    private Draft draft; // autosaved inputs
+    private final Debouncer draftSave = new Debouncer(DRAFT_MAX_LATENCY, this::saveDraft); // coalesces input changes into a single draft save
+    private ClipboardMonitor monitor; // clipboard changes
+    private final ClipboardMonitor.Subscriber clipboardSubscriber = this::onClipChanged; // kept to unsubscribe it
+    private final TextStatistics statistics = new TextStatistics(); // content statistics
+    private final Checksums checksums = new Checksums(); // content checksums, computed in background
+    private final Debouncer checksumsUpdate = new Debouncer(CHECKSUMS_MAX_LATENCY, this::updateChecksums); // coalesces changes into a single computation
+    private final Debouncer inputSync = new Debouncer(SYNC_INPUT_MAX_LATENCY, this::inputToClipboard); // coalesces input changes into a single clipboard write
+    private final ClipSnapshot snapshot = new ClipSnapshot(); // last clip synced with the input
+    private final StartupTrace startup = new StartupTrace(); // startup timings
+    private final UndoHistory undoHistory = new UndoHistory(); // undo/redo of the inputs
+    private final UndoHistory.Target undoTarget = this::undoReplace; // where undo/redo are applied
+    private final Metrics metrics = new Metrics(); // performance instrumentation (opt-in)
+    private final StructureViewer structureViewer = new StructureViewer(); // json/csv viewer
+    private final PipelineDialog pipelineDialog = new PipelineDialog(); // transform pipelines
 
     // views
     private EditText v_content; // content input
@@ -61,10 +119,49 @@ public class Editor extends Activity {
     private TextView v_extra; // extra text
 
     private TextView v_statistics; // statistics text
+    private ScrollView v_scroll; // inputs scroll
+    private View v_items; // item selector (multiple items only)
+    private TextView v_itemIndex; // current item
+    private View v_undo; // undo button
+    private View v_redo; // redo button
+    private View v_findBar; // find/replace inputs
+    private EditText v_findQuery; // text to find
+    private EditText v_findReplacement; // text to replace with
+    private CheckBox v_findRegex; // regex mode
+    private TextView v_findCount; // matches found
+    private View v_structure; // json/csv viewer button (only for those contents)
+    private View v_sensitive; // sensitive mode toggle
 
     // internal data
     private boolean noListener = false; // to avoid firing clipboardToInput and inputToClipboard recursively
     private boolean syncOnHasFocus = true; // to run when app starts only once
+    private boolean restoringDraft = false; // true while the draft is being read (the start sync waits for it)
+    private boolean fullyDrawn = false; // true once the startup finished (the first focus)
+    private boolean statisticsReady = false; // false until the statistics are initialized (after the first frame)
+    private int inputVersion = 0; // increased on each input change
+    private boolean resultDirty = false; // true if the activity result needs to be updated
+    private String inputKey = null; // spilled text received (temporary), deleted when finished
+    private String resultKey = null; // spilled text of the current result, deleted when replaced
+    private String checksumsText = null; // checksums of the current content, null while computing
+
+    // sensitive mode (nothing is logged, kept nor saved, and the clipboard is cleared after a while)
+    private boolean sensitiveManual = false; // toggled by the user
+    private boolean sensitiveDetected = false; // the clip in the inputs was marked as sensitive
+
+    // large mode (the content is too big for the input, which shows only a window of it)
+    private ChunkedText large = null; // the full content, null if not in large mode
+    private int windowStart = 0; // offset in 'large' of the first char of the content input
+    private boolean windowing = false; // true while the window is being changed (the content input changes, but not the content)
+
+    // multiple items (the content input shows one of them, the others are only loaded when opened)
+    private String clipExtra = ""; // description of the clip in the inputs (mimetypes, item count)
+    private ClipData items = null; // the clip in the inputs, null if it has a single item
+    private int itemIndex = 0; // index of the item in the content input
+    private int itemVersion = 0; // inputVersion when that item was loaded (if different now, it was edited)
+    private final SparseArray<String> editedItems = new SparseArray<>(); // texts of the edited items (the current one may be outdated)
+
+    // find
+    private final List<Object> highlights = new ArrayList<>(); // spans of the highlighted matches
 
     // ------------------- init -------------------
 
@@ -73,60 +170,103 @@ public class Editor extends Activity {
         super.onCreate(savedInstanceState);
 
         // activity content
+        startup.begin("layout");
         this.requestWindowFeature(Window.FEATURE_NO_TITLE);
         setContentView(R.layout.activity_editor);
 
         // views
+        startup.begin("views");
         v_content = findViewById(R.id.content);
         v_label = findViewById(R.id.label);
         v_extra = findViewById(R.id.description);
         v_statistics = findViewById(R.id.statistics);
-
-        // descriptions
-        for (var viewId : new int[]{R.id.notify, R.id.share, R.id.clear, R.id.configure, R.id.info, R.id.sync_to, R.id.sync_from}) {
-            findViewById(viewId).setOnLongClickListener(view -> {
-                Toast.makeText(Editor.this, view.getContentDescription().toString(), Toast.LENGTH_SHORT).show();
-                return true;
-            });
-        }
+        v_scroll = findViewById(R.id.scroll);
+        v_items = findViewById(R.id.items);
+        v_itemIndex = findViewById(R.id.item_index);
+        v_undo = findViewById(R.id.undo);
+        v_redo = findViewById(R.id.redo);
+        v_findBar = findViewById(R.id.find_bar);
+        v_findQuery = findViewById(R.id.find_query);
+        v_findReplacement = findViewById(R.id.find_replacement);
+        v_findRegex = findViewById(R.id.find_regex);
+        v_findCount = findViewById(R.id.find_count);
+        v_structure = findViewById(R.id.structure);
+        v_sensitive = findViewById(R.id.sensitive);
 
         // preferences
+        startup.begin("preferences");
         prefs = new Preferences(getPreferences(MODE_PRIVATE));
+        draft = new Draft(this);
+        metrics.setEnabled(prefs.is(METRICS));
 
         // clipboard
+        startup.begin("listeners");
         clipboard = (ClipboardManager) getSystemService(CLIPBOARD_SERVICE);
-        notification = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+        clipLoader = new ClipLoader(this);
+        finder = new Finder(getString(R.string.txt_find_timeout));
+        monitor = ClipboardMonitor.get(this);
+        notifications = new Notifications(this);
 
-        // statistics
-        v_content.addTextChangedListener(new SimpleTextWatcher() {
+        // content changes: large mode & statistics
+        v_content.addTextChangedListener(metrics.timed(Metrics.Metric.WATCHER_STATISTICS, new SimpleTextWatcher() {
             @Override
-            public void afterTextChanged(Editable s) {
-                computeStatistics(s);
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                if (windowing || !statisticsReady) return;
+                if (large == null) statistics.beforeChange(s, start, count);
+                else statistics.beforeChange(large, windowStart + start, count);
             }
-        });
-        computeStatistics(v_content.getText());
-        v_statistics.setVisibility(prefs.is(STATISTICS) ? VISIBLE : GONE);
 
-        // enable clipboard to input
-        clipboard.addPrimaryClipChangedListener(() -> {
-            if (prefs.is(SYNC_EXTERNAL)) {
-                clipboardToInput();
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                if (windowing) return;
+                if (large != null) {
+                    // apply the edit to the full content
+                    large.replace(windowStart + start, windowStart + start + before, s, start, start + count);
+                }
+                if (!statisticsReady) return;
+                if (large == null) statistics.afterChange(s, start, count);
+                else statistics.afterChange(large, windowStart + start, count);
+                if (isChecksumsEnabled()) checksums.change(large == null ? start : windowStart + start, before, count);
             }
-        });
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                if (windowing) return;
+                if (statisticsReady && isChecksumsEnabled()) requestChecksums();
+                showStatistics();
+            }
+        }));
+
+        // draft: record the input changes
+        v_content.addTextChangedListener(metrics.timed(Metrics.Metric.WATCHER_DRAFT, new DraftWatcher(Draft.CONTENT)));
+        v_label.addTextChangedListener(metrics.timed(Metrics.Metric.WATCHER_DRAFT, new DraftWatcher(Draft.LABEL)));
+
+        // undo: record the input changes
+        v_content.addTextChangedListener(metrics.timed(Metrics.Metric.WATCHER_UNDO, new UndoWatcher(UNDO_CONTENT)));
+        v_label.addTextChangedListener(metrics.timed(Metrics.Metric.WATCHER_UNDO, new UndoWatcher(UNDO_LABEL)));
+        setUndoMaxKb();
+        updateUndoButtons();
+        updateSensitive(false);
+
+        // enable clipboard to input (the history, if enabled, receives the changes directly)
+        monitor.subscribe(clipboardSubscriber);
+        setHistoryState(prefs.is(HISTORY));
 
         // enable input to clipboard
-        var watcher = new SimpleTextWatcher() {
+        var watcher = metrics.timed(Metrics.Metric.WATCHER_SYNC, new SimpleTextWatcher() {
             @Override
             public void afterTextChanged(Editable s) {
-                if (prefs.is(SYNC_INPUT)) {
-                    // sync on input
-                    inputToClipboard();
-                }
+                if (windowing) return;
+                inputVersion++;
+                requestInputSync();
             }
-        };
+        });
         v_content.addTextChangedListener(watcher);
         v_label.addTextChangedListener(watcher);
 
+        // large mode: move the window when scrolling near its edges
+        v_scroll.getViewTreeObserver().addOnScrollChangedListener(this::updateWindow);
+
         // manual buttons
         findViewById(R.id.sync_to).setVisibility(prefs.is(SYNC_BTN_IC) ? VISIBLE : GONE);
         findViewById(R.id.sync_from).setVisibility(prefs.is(SYNC_BTN_CI) ? VISIBLE : GONE);
@@ -136,15 +276,13 @@ public class Editor extends Activity {
             findViewById(R.id.extra_parent).setFocusable(NOT_FOCUSABLE);
         }
 
-        // auto-update result
-        v_content.addTextChangedListener(new SimpleTextWatcher() {
+        // auto-update result (built when needed, see updateResult)
+        v_content.addTextChangedListener(metrics.timed(Metrics.Metric.WATCHER_RESULT, new SimpleTextWatcher() {
             @Override
             public void afterTextChanged(Editable s) {
-                var intent = new Intent();
-                intent.putExtra(getPackageName(), inputAsPrimaryClip());
-                setResult(RESULT_OK, intent);
+                if (!windowing) resultDirty = true;
             }
-        });
+        }));
 
         // give focus to the content
         // & show keyboard if enabled in settings
@@ -156,29 +294,155 @@ public class Editor extends Activity {
         // capitalize input state if enabled in settings
         setCapitalizeState(prefs.is(CAPITALIZE));
 
+        // draft (unsaved inputs of a killed process)
+        startup.begin("draft");
+        restoreDraft();
+
         // start intent
+        startup.begin("intent");
         parseIntent(getIntent());
         setIntent(null);
+
+        // the rest, once visible
+        startup.end();
+        afterFirstFrame(this::onCreateDeferred);
+    }
+
+    /**
+     * Initializations not needed for the first frame
+     */
+    private void onCreateDeferred() {
+        startup.begin("deferred");
+
+        // descriptions
+        for (var viewId : new int[]{R.id.notify, R.id.share, R.id.history, R.id.find, R.id.structure, R.id.clear, R.id.configure, R.id.info, R.id.undo, R.id.redo, R.id.sync_to, R.id.sync_from}) {
+            findViewById(viewId).setOnLongClickListener(view -> {
+                Toast.makeText(Editor.this, view.getContentDescription().toString(), Toast.LENGTH_SHORT).show();
+                return true;
+            });
+        }
+
+        // statistics
+        statisticsReady = true;
+        resetStatistics();
+        updateStatisticsVisibility();
+
+        // notifications
+        notifications.createChannel();
+
+        // find: search again when something changes (matches found before are now outdated)
+        var findWatcher = metrics.timed(Metrics.Metric.WATCHER_FIND, new SimpleTextWatcher() {
+            @Override
+            public void afterTextChanged(Editable s) {
+                requestFind();
+            }
+        });
+        v_findQuery.addTextChangedListener(findWatcher);
+        v_content.addTextChangedListener(findWatcher);
+        v_findRegex.setOnCheckedChangeListener((checkbox, checked) -> requestFind());
+
+        startup.end();
+    }
+
+    /**
+     * Runs the action once the first frame is drawn
+     */
+    private void afterFirstFrame(Runnable action) {
+        var observer = getWindow().getDecorView().getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                getWindow().getDecorView().getViewTreeObserver().removeOnPreDrawListener(this);
+                // posted, so it runs after this frame is drawn
+                new Handler(Looper.getMainLooper()).post(action);
+                return true;
+            }
+        });
     }
 
     @Override
     public void onWindowFocusChanged(boolean hasFocus) {
         super.onWindowFocusChanged(hasFocus);
         if (hasFocus) {
-            if (syncOnHasFocus) {
-                syncOnHasFocus = false;
-
-                // when windows is focused, update clipboard
-                // this is the moment the clipboard is available after the app starts
-                if (prefs.is(SYNC_START)) {
-                    clipboardToInput();
-                }
+            // when windows is focused, update clipboard (after the draft, which replaces it)
+            if (syncOnHasFocus && !restoringDraft) syncOnStart();
+            if (!fullyDrawn) {
+                // the content is now displayed
+                fullyDrawn = true;
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) reportFullyDrawn();
             }
         } else {
             if (prefs.is(SYNC_PAUSE)) inputToClipboard();
+            else inputSync.flush();
+        }
+    }
+
+    /**
+     * The start sync: the clipboard is available once focused after the app starts
+     */
+    private void syncOnStart() {
+        syncOnHasFocus = false;
+        if (prefs.is(SYNC_START)) {
+            startup.begin("clipboard");
+            clipboardToInput();
+            startup.end();
         }
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        updateResult();
+        // the process may be killed from now on
+        draftSave.flush();
+    }
+
+    @Override
+    public void finish() {
+        // the result is sent when finishing
+        updateResult();
+        super.finish();
+    }
+
+    @Override
+    protected void onDestroy() {
+        // don't lose pending input changes
+        inputSync.flush();
+        monitor.unsubscribe(clipboardSubscriber);
+        clipLoader.destroy();
+        if (isFinishing() && inputKey != null) ClipCache.delete(this, inputKey, true);
+        if (isFinishing()) {
+            // closed by the user, nothing to restore
+            draftSave.cancel();
+            draft.clear();
+            if (isSensitive()) wipeInputs();
+        }
+        draftSave.cancel(); // already flushed when paused
+        draft.destroy();
+        findUpdate.cancel();
+        finder.destroy();
+        structureViewer.destroy();
+        pipelineDialog.destroy();
+        checksumsUpdate.cancel();
+        checksums.destroy();
+        super.onDestroy();
+    }
+
+    /**
+     * A clipboard change
+     */
+    private void onClipChanged(ClipboardMonitor.Event event) {
+        if (clipboardIsSnapshot()) {
+            // our own write being notified, nothing changed (and not for the history either)
+            Log.d("CLIPBOARD", "Skipped read, total: " + snapshot.skippedRead());
+            event.ignore();
+            return;
+        }
+        if (sensitiveManual) event.ignore(); // never kept while sensitive
+
+        if (prefs.is(SYNC_EXTERNAL)) clipboardToInput(event);
+    }
+
     @Override
     protected void onNewIntent(Intent intent) {
         super.onNewIntent(intent);
@@ -193,6 +457,25 @@ public class Editor extends Activity {
         if (intent == null) return;
         ClipData data = null;
 
+        // set by ourselves, too big for the intent (the rest is done when loaded)
+        // if temporary, it is kept until finished (the intent is parsed again if the activity is recreated)
+        var key = ClipTransport.getKey(intent);
+        if (key != null) {
+            var label = ClipTransport.getLabel(intent);
+            var temporary = ClipTransport.isTemporary(intent);
+            if (temporary) inputKey = key;
+            syncOnHasFocus = false;
+            clipLoader.load(() -> ClipCache.read(this, key, temporary), text -> {
+                if (text == null) {
+                    // removed (by the system, or replaced by newer ones), the content is lost
+                    Toast.makeText(this, R.string.toast_clip_missing, Toast.LENGTH_LONG).show();
+                    return;
+                }
+                clipToInput(ClipData.newPlainText(label, text));
+            });
+            return;
+        }
+
         // set by ourselves
         if (intent.hasExtra(getPackageName()))
             data = intent.getParcelableExtra(getPackageName());
@@ -207,6 +490,56 @@ public class Editor extends Activity {
         }
     }
 
+    /**
+     * Restores the draft, if any (read in background).
+     * Startup precedence: the intent content (parsed after this) replaces the draft, and the draft replaces the clipboard (not read at start then)
+     */
+    private void restoreDraft() {
+        restoringDraft = true;
+        var version = inputVersion;
+        draft.restore(state -> {
+            restoringDraft = false;
+            if (state == null || version != inputVersion) {
+                // nothing to restore, or the inputs were replaced meanwhile (like by the intent)
+                if (syncOnHasFocus && hasWindowFocus()) syncOnStart();
+                return;
+            }
+
+            v_label.setText(state.label());
+            setContent(state.content().toString());
+            draft.restored();
+            undoHistory.clear();
+            updateUndoButtons();
+            syncOnHasFocus = false;
+            Log.d("DRAFT", "Restored [" + state.label() + "] " + state.content().length() + " chars");
+        });
+    }
+
+    /**
+     * Sets the input as the activity result, if it changed since the last time (and someone will receive it)
+     */
+    private void updateResult() {
+        if (getCallingActivity() == null) return; // not started for result
+        if (!resultDirty) return;
+        resultDirty = false;
+
+        var intent = new Intent();
+        var clip = inputAsPrimaryClip();
+        var text = toStringNonNull(clip.getItemAt(items == null ? 0 : itemIndex).getText());
+
+        // the previous spilled result (if any) is now obsolete
+        if (resultKey != null) ClipCache.delete(this, resultKey, true);
+        try {
+            resultKey = ClipTransport.put(this, intent, clip, text, true);
+        } catch (IOException e) {
+            // can't be spilled, try inline
+            Log.e("RESULT", "Unable to cache the result", e);
+            resultKey = null;
+            intent.putExtra(getPackageName(), clip);
+        }
+        setResult(RESULT_OK, intent);
+    }
+
     /**
      * Update
      */
@@ -222,53 +555,53 @@ public class Editor extends Activity {
         }
     }
 
+    /**
+     * Enables or disables the history: the button, and the capture of clipboard changes
+     */
+    private void setHistoryState(boolean state) {
+        findViewById(R.id.history).setVisibility(state ? VISIBLE : GONE);
+        monitor.setSink(state ? getHistory()::add : null);
+    }
+
+    /**
+     * @return the history, loaded when first needed (so never if it is disabled)
+     */
+    private History getHistory() {
+        if (history == null) history = History.get(this, prefs);
+        return history;
+    }
+
+    /**
+     * Enables or disables the quick actions of the text selection menu (Process aliases)
+     */
+    private void setProcessActionsState(boolean state) {
+        for (var alias : new String[]{".ProcessTrim", ".ProcessUppercase", ".ProcessLowercase", ".ProcessPipeline"}) {
+            getPackageManager().setComponentEnabledSetting(
+                    new ComponentName(this, getPackageName() + alias),
+                    state ? PackageManager.COMPONENT_ENABLED_STATE_ENABLED : PackageManager.COMPONENT_ENABLED_STATE_DEFAULT,
+                    PackageManager.DONT_KILL_APP
+            );
+        }
+    }
+
     // ------------------- buttons -------------------
 
     /** Shows a notification with the clipboard content */
     public void onNotification(View ignored) {
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU && !notification.areNotificationsEnabled()) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU && !notifications.areEnabled()) {
             // request notifications permission
             requestPermissions(new String[]{Manifest.permission.POST_NOTIFICATIONS}, NOTIFICATIONS_REQUEST_CODE);
             return;
         }
 
-        Notification.Builder builder;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            // setup a notification channel in Oreo+
-            var channel = new NotificationChannel(CHANNEL_ID, getString(R.string.channel_name), NotificationManager.IMPORTANCE_DEFAULT);
-            channel.setDescription(getString(R.string.channel_description));
-            notification.createNotificationChannel(channel);
-
-            builder = new Notification.Builder(this, CHANNEL_ID);
-        } else {
-            // no notification channel before Oreo
-            builder = new Notification.Builder(this);
-        }
-
-        // sets the label as notification title (if any), the content and icon
-        if (v_label.getText().length() == 0) builder.setContentTitle(v_label.getText());
-        builder.setContentText(v_content.getText());
-        builder.setSmallIcon(R.drawable.ic_notification);
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-            // when allowed, set the content as big text (improved display)
-            builder.setStyle(new Notification.BigTextStyle()
-                    .bigText(v_content.getText()));
+        if (isSensitive()) {
+            // would be shown (and kept) outside the app
+            Toast.makeText(this, R.string.toast_sensitive_notification, Toast.LENGTH_SHORT).show();
+            return;
         }
 
-        // sets the intent for when you click the notification. It will open the app with the current clipboard content
-        var intent = new Intent(this, Editor.class);
-        intent.putExtra(getPackageName(), inputAsPrimaryClip());
-        builder.setContentIntent(PendingIntent.getActivity(this, getUniqueId(), intent, PendingIntent.FLAG_UPDATE_CURRENT | (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0))); // change the requestCode with an unique id for multiple independent pendingIntents
-
-
-        // publish the notification
-        var notification = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
-        var id = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? notification.getActiveNotifications().length : getUniqueId(); // ensure unique id
-        notification.notify(id,
-                Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? builder.build() : builder.getNotification()
-        );
+        notifications.show(inputAsPrimaryClip(), getContent().toString());
     }
 
     @Override
@@ -283,30 +616,223 @@ public class Editor extends Activity {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
     }
 
+    /**
+     * Toggles the sensitive mode
+     */
+    public void onSensitive(View view) {
+        var wasSensitive = isSensitive();
+        // off if it was on for any reason
+        sensitiveManual = !wasSensitive;
+        sensitiveDetected = false;
+        updateSensitive(wasSensitive);
+        Toast.makeText(this, isSensitive() ? R.string.toast_sensitive_on : R.string.toast_sensitive_off, Toast.LENGTH_SHORT).show();
+
+        if (isSensitive() && snapshot.isInput(inputVersion) && clipboardIsSnapshot()) {
+            // the clipboard has the inputs, write them again marked
+            snapshot.invalidate();
+            inputToClipboard();
+        }
+    }
+
     /**
      * Share the clipboard content
      */
     public void onShare(View view) {
-        // create a SEND text intent with the clipboard content
+        // use the label as title
+        share(v_label.getText(), getContent().toString(), inputAsPrimaryClip());
+    }
+
+    /**
+     * Shares a text (with a chooser)
+     *
+     * @param clip the full clip, if available (may be null)
+     */
+    private void share(CharSequence title, String text, ClipData clip) {
+        // create a SEND text intent with the text
         var sendIntent = new Intent();
         sendIntent.setAction(Intent.ACTION_SEND);
-        sendIntent.putExtra(Intent.EXTRA_TEXT, v_content.getText().toString());
+        sendIntent.putExtra(Intent.EXTRA_TEXT, text);
         sendIntent.setType("text/plain");
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+        if (clip != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
             // not sure what it does, but maybe it allows to share images (even if the app can't display them)
-            sendIntent.setClipData(inputAsPrimaryClip());
+            sendIntent.setClipData(clip);
+        }
+
+        // start a chooser
+        startActivity(Intent.createChooser(sendIntent, title));
+    }
+
+    /**
+     * Shows the clipboard history, to restore an entry
+     */
+    public void onHistory(View view) {
+        // setup
+        var history = getHistory();
+        var content = getLayoutInflater().inflate(R.layout.history, null);
+        var adapter = new ArrayAdapter<History.Entry>(this, android.R.layout.simple_list_item_2, android.R.id.text1) {
+            @Override
+            public View getView(int position, View convertView, ViewGroup parent) {
+                var view = super.getView(position, convertView, parent);
+                var entry = getItem(position);
+                view.<TextView>findViewById(android.R.id.text1).setText(entry.preview);
+                view.<TextView>findViewById(android.R.id.text2).setText(
+                        (entry.label.isEmpty() ? "" : "[" + entry.label + "] ") + DateUtils.getRelativeTimeSpanString(entry.time));
+                return view;
+            }
+        };
+        var list = content.<ListView>findViewById(R.id.list);
+        list.setAdapter(adapter);
+
+        // search
+        var search = content.<EditText>findViewById(R.id.search);
+        search.addTextChangedListener(new SimpleTextWatcher() {
+            @Override
+            public void afterTextChanged(Editable s) {
+                adapter.clear();
+                adapter.addAll(history.search(s.toString(), HISTORY_RESULTS));
+            }
+        });
+        adapter.addAll(history.search("", HISTORY_RESULTS));
+
+        // show
+        var dialog = new AlertDialog.Builder(this)
+                .setIcon(R.mipmap.ic_launcher)
+                .setTitle(R.string.descr_history)
+                .setView(content)
+                .setNeutralButton(R.string.btn_clear_history, (d, w) -> history.clear())
+                .show();
+
+        // restore
+        list.setOnItemClickListener((parent, v, position, id) -> {
+            var entry = adapter.getItem(position);
+            // to the inputs, then to the clipboard like any other change
+            history.getText(entry, text -> {
+                if (text == null) {
+                    // removed meanwhile (or the history file is damaged)
+                    Toast.makeText(this, R.string.toast_history_unavailable, Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                clipToInput(ClipData.newPlainText(entry.label, text), this::inputToClipboard);
+            });
+            dialog.dismiss();
+        });
+    }
+
+    /**
+     * Reverts the last change of the inputs
+     */
+    public void onUndo(View view) {
+        undoHistory.undo(undoTarget);
+        updateUndoButtons();
+    }
+
+    /**
+     * Repeats the last undone change of the inputs
+     */
+    public void onRedo(View view) {
+        undoHistory.redo(undoTarget);
+        updateUndoButtons();
+    }
+
+    /**
+     * Shows or hides the find/replace inputs
+     */
+    public void onFind(View view) {
+        var show = v_findBar.getVisibility() != VISIBLE;
+        v_findBar.setVisibility(show ? VISIBLE : GONE);
+        if (show) {
+            v_findQuery.requestFocus();
+            find();
+        } else {
+            findUpdate.cancel();
+            finder.cancel();
+            clearHighlights();
+            v_content.requestFocus();
         }
+    }
 
-        // start a chooser, use the label as title
-        startActivity(Intent.createChooser(sendIntent, v_label.getText()));
+    /**
+     * Shows the content in the json/csv viewer
+     */
+    public void onStructure(View view) {
+        var type = StructuredText.detect(getContent());
+        if (type == null) {
+            // edited since detected
+            v_structure.setVisibility(GONE);
+            Toast.makeText(this, R.string.toast_unstructured, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        var version = inputVersion;
+        structureViewer.show(this, type, getContent().toString(), result -> {
+            if (version != inputVersion) {
+                // edited meanwhile, the result would undo those changes
+                Toast.makeText(this, R.string.toast_changed, Toast.LENGTH_SHORT).show();
+                return;
+            }
+            undoHistory.beginGroup();
+            setContent(result);
+            undoHistory.endGroup();
+            inputToClipboard();
+            Toast.makeText(this, R.string.toast_reformatted, Toast.LENGTH_SHORT).show();
+        });
+    }
+
+    /**
+     * Applies a transform pipeline to the content, as a single content change
+     */
+    public void onPipeline(View view) {
+        var version = inputVersion;
+        pipelineDialog.show(this, getContent().toString(), result -> {
+            if (result == null) return; // cancelled
+            if (version != inputVersion) {
+                // edited meanwhile, the result would undo those changes
+                Toast.makeText(this, R.string.toast_changed, Toast.LENGTH_SHORT).show();
+                return;
+            }
+            undoHistory.beginGroup();
+            setContent(result);
+            undoHistory.endGroup();
+            inputToClipboard();
+            Toast.makeText(this, R.string.toast_pipeline_applied, Toast.LENGTH_SHORT).show();
+        });
+    }
+
+    /**
+     * Replaces all the matches, as a single content change
+     */
+    public void onReplaceAll(View view) {
+        var query = v_findQuery.getText().toString();
+        if (query.isEmpty()) return;
+
+        findUpdate.cancel();
+        var version = inputVersion;
+        finder.replaceAll(getContentSnapshot(), query, v_findRegex.isChecked(), v_findReplacement.getText().toString(), (result, count, error) -> {
+            if (error != null) {
+                v_findCount.setText(error);
+            } else if (version != inputVersion) {
+                // edited meanwhile, the result would undo those changes
+                Toast.makeText(this, R.string.toast_changed, Toast.LENGTH_SHORT).show();
+                find();
+            } else {
+                undoHistory.beginGroup();
+                setContent(result);
+                undoHistory.endGroup();
+                inputToClipboard();
+                Toast.makeText(this, getString(R.string.toast_replaced, count), Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     /**
      * Clears the clipboard content
      */
     public void onClear(View view) {
-        v_content.setText("");
+        undoHistory.beginGroup();
+        setItems(null);
+        setContent("");
         v_label.setText("");
+        undoHistory.endGroup();
     }
 
     /**
@@ -320,15 +846,19 @@ public class Editor extends Activity {
                 new PreferenceSwitch(SHOW_KEYBOARD, R.id.autokeyboard, null),
                 new PreferenceSwitch(CAPITALIZE, R.id.capitalize, this::setCapitalizeState),
                 new PreferenceSwitch(STATISTICS, R.id.statistics, checked -> {
-                    if (checked) computeStatistics(v_content.getEditableText());
-                    v_statistics.setVisibility(checked ? VISIBLE : GONE);
+                    if (checked) showStatistics();
+                    updateStatisticsVisibility();
                 }),
+                new PreferenceSwitch(CHECKSUMS, R.id.checksums, this::setChecksumsState),
                 new PreferenceSwitch(SYNC_START, R.id.sync_start, null),
                 new PreferenceSwitch(SYNC_BTN_CI, R.id.sync_btn_ci, checked -> findViewById(R.id.sync_from).setVisibility(checked ? VISIBLE : GONE)),
                 new PreferenceSwitch(SYNC_EXTERNAL, R.id.sync_external, null),
                 new PreferenceSwitch(SYNC_INPUT, R.id.sync_input, null),
                 new PreferenceSwitch(SYNC_BTN_IC, R.id.sync_btn_ic, checked -> findViewById(R.id.sync_to).setVisibility(checked ? VISIBLE : GONE)),
-                new PreferenceSwitch(SYNC_PAUSE, R.id.sync_pause, null)
+                new PreferenceSwitch(SYNC_PAUSE, R.id.sync_pause, null),
+                new PreferenceSwitch(HISTORY, R.id.history, this::setHistoryState),
+                new PreferenceSwitch(PROCESS_ACTIONS, R.id.process_actions, this::setProcessActionsState),
+                new PreferenceSwitch(METRICS, R.id.metrics, this::setMetricsState)
         )) {
             var switchView = content.<Switch>findViewById(preferenceSwitch.id);
             switchView.setChecked(prefs.is(preferenceSwitch.preference));
@@ -338,12 +868,46 @@ public class Editor extends Activity {
             });
         }
 
-        // show
+        for (var preferenceNumber : List.of(
+                new PreferenceNumber(SYNC_INPUT_DELAY, R.id.sync_input_delay),
+                new PreferenceNumber(LARGE_THRESHOLD, R.id.large_threshold),
+                new PreferenceNumber(HISTORY_MAX_COUNT, R.id.history_max_count),
+                new PreferenceNumber(HISTORY_MAX_KB, R.id.history_max_kb),
+                new PreferenceNumber(UNDO_MAX_KB, R.id.undo_max_kb),
+                new PreferenceNumber(SENSITIVE_CLEAR_DELAY, R.id.sensitive_clear_delay)
+        )) {
+            var numberView = content.<EditText>findViewById(preferenceNumber.id);
+            numberView.setText(Integer.toString(prefs.get(preferenceNumber.preference)));
+            numberView.addTextChangedListener(new SimpleTextWatcher() {
+                @Override
+                public void afterTextChanged(Editable s) {
+                    var preference = preferenceNumber.preference;
+                    try {
+                        var value = Integer.parseInt(s.toString());
+                        prefs.set(preference, value);
+                        // saved clamped, tell why
+                        numberView.setError(prefs.get(preference) == value ? null : getString(R.string.conf_number_range, preference.getMin(), preference.getMax()));
+                    } catch (NumberFormatException ignored) {
+                        // empty or too big, keep previous
+                    }
+                }
+            });
+        }
+
+        // metrics report
+        content.findViewById(R.id.metrics_export).setOnClickListener(v -> share(getString(R.string.conf_metrics), metrics.report(), null));
+
+        // show (all changes are saved together when closed)
+        prefs.beginBatch();
         new AlertDialog.Builder(this)
                 .setIcon(R.mipmap.ic_launcher)
                 .setTitle(R.string.descr_configure)
                 .setView(content)
-                .show();
+                .show()
+                .setOnDismissListener(d -> {
+                    prefs.endBatch();
+                    setUndoMaxKb();
+                });
     }
 
     record PreferenceSwitch(Preferences.Pref preference, int id, OnPrefChange onChange) {
@@ -352,6 +916,9 @@ public class Editor extends Activity {
         }
     }
 
+    record PreferenceNumber(Preferences.Pref preference, int id) {
+    }
+
     /**
      * Show the about screen
      */
@@ -384,13 +951,27 @@ public class Editor extends Activity {
             button.setOnLongClickListener(btn -> {
                 // long click to set in input
                 v_label.setText("TrianguloY");
-                v_content.setText(btn.getTag().toString());
+                setContent(btn.getTag().toString());
                 dialog.dismiss();
                 return true;
             });
         }
     }
 
+    /**
+     * Shows the previous item of the clip
+     */
+    public void onPreviousItem(View view) {
+        openItem(itemIndex - 1);
+    }
+
+    /**
+     * Shows the next item of the clip
+     */
+    public void onNextItem(View view) {
+        openItem(itemIndex + 1);
+    }
+
     /**
      * @see this#clipboardToInput
      */
@@ -413,11 +994,39 @@ public class Editor extends Activity {
      * Ensures it doesn't fire inputToClipboard
      */
     private void clipboardToInput() {
+        clipboardToInput(null);
+    }
+
+    /**
+     * Same as {@link #clipboardToInput()}
+     *
+     * @param event the change being notified, its clip is used (the monitor already captures it and updates the preview). Null to read the clipboard now
+     */
+    private void clipboardToInput(ClipboardMonitor.Event event) {
         if (noListener) return;
         noListener = true;
 
-        // get
-        clipToInput(clipboard.getPrimaryClip());
+        // the input will be replaced, pending changes are now obsolete
+        inputSync.cancel();
+
+        if (snapshot.isInput(inputVersion) && clipboardIsSnapshot()) {
+            // already synced
+            Log.d("CLIPBOARD", "Skipped read, total: " + snapshot.skippedRead());
+        } else if (event != null) {
+            // already read
+            clipToInput(event.getClip());
+        } else {
+            // get
+            var start = metrics.start();
+            var clip = clipboard.getPrimaryClip();
+            metrics.end(Metrics.Metric.GET_CLIP, start);
+            if (!sensitiveManual && !SensitiveClip.isSensitive(clip == null ? null : clip.getDescription())) {
+                // to the history, like the notified changes (never kept while sensitive)
+                monitor.capture(clip);
+            }
+            ClipPreview.update(this, clip);
+            clipToInput(clip);
+        }
 
         noListener = false;
     }
@@ -426,32 +1035,58 @@ public class Editor extends Activity {
      * Sets the inputs to the values of the clipdata
      */
     private void clipToInput(ClipData clip) {
+        clipToInput(clip, null);
+    }
+
+    /**
+     * Same as {@link #clipToInput(ClipData)}
+     *
+     * @param then if not null, run once the content is set (it may be loaded in background)
+     */
+    private void clipToInput(ClipData clip, Runnable then) {
+        var start = metrics.start();
+        // a previous load, if any, is now obsolete
+        clipLoader.cancel();
+        var fromClipboard = noListener; // from clipboardToInput, the clip will be remembered once loaded
+        undoHistory.beginGroup(); // a single undo step (if loaded in background, the content will be another one)
 
         // set
         if (clip == null) {
             // no content
+            setItems(null);
             v_extra.setText(String.format("[%s]", getString(R.string.txt_empty)));
             v_label.setText("");
-            v_content.setText("");
+            setContent("");
+            v_structure.setVisibility(GONE);
+            if (fromClipboard) rememberClip(null);
+            setSensitiveDetected(false);
+            if (then != null) then.run();
 
             Log.d("CLIPBOARD", "--> null");
         } else {
             // content
             var description = clip.getDescription();
+            var sensitive = SensitiveClip.isSensitive(description);
+            if (sensitive) setSensitiveDetected(true); // before loading it, so it isn't kept
+            if (sensitive && fromClipboard) {
+                // copied by another app, clear it after a while too
+                SensitiveClip.scheduleClear(this, prefs.get(SENSITIVE_CLEAR_DELAY), SensitiveClip.getTimestamp(description));
+            }
 
             // mimetype
-            v_extra.setText(R.string.label_mimetype);
+            var extra = new StringBuilder(getString(R.string.label_mimetype));
             var empty = true;
             for (var i = 0; i < description.getMimeTypeCount(); i++) {
-                if (!empty) v_extra.append(" -");
+                if (!empty) extra.append(" -");
                 empty = false;
-                v_extra.append(" " + description.getMimeType(i));
+                extra.append(" ").append(description.getMimeType(i));
             }
-            if (empty) v_extra.append(getString(R.string.txt_empty));
+            if (empty) extra.append(getString(R.string.txt_empty));
 
             // item count
             var itemCount = clip.getItemCount();
-            if (itemCount > 1) v_extra.append(getString(R.string.txt_itemcount) + itemCount);
+            if (itemCount > 1) extra.append(getString(R.string.txt_itemcount)).append(itemCount);
+            clipExtra = extra.toString();
 
             // label
             var label = toStringNonNull(description.getLabel());
@@ -460,16 +1095,223 @@ public class Editor extends Activity {
                 if (v_label.hasFocus()) v_label.setSelection(v_label.getText().length());
             }
 
-            // text
-            var content = toStringNonNull(clip.getItemAt(0).coerceToText(this));
-            if (!toStringNonNull(v_content.getText()).equals(content)) {
-                v_content.setText(content);
-                if (v_content.hasFocus()) v_content.setSelection(v_content.getText().length());
-            }
+            // text (of the first item, the others are loaded when opened)
+            setItems(clip);
+            loadItem(clip.getItemAt(0), () -> {
+                itemVersion = inputVersion;
+                // offer the structured viewer if json/csv
+                v_structure.setVisibility(StructuredText.detect(getContent()) != null ? VISIBLE : GONE);
+                if (fromClipboard) rememberClip(clip);
+                if (!sensitive) setSensitiveDetected(false); // after replacing the sensitive content, if any
+                Log.d("CLIPBOARD", isSensitive() ? "--> [sensitive]" : "--> [" + label + "] " + getContent());
+                if (then != null) then.run();
+            });
+        }
+        undoHistory.endGroup();
+        metrics.end(Metrics.Metric.CLIP_TO_INPUT, start);
+    }
 
+    /**
+     * Sets the content to the item text, then runs onLoaded.
+     * Cheap items are coerced directly, the others in background (with the same noListener state as now)
+     */
+    private void loadItem(ClipData.Item item, Runnable onLoaded) {
+        v_extra.setText(clipExtra);
+        if (ClipLoader.isCheap(item, SYNC_LOAD_MAX_LENGTH)) {
+            // direct
+            setContent(toStringNonNull(item.coerceToText(this)));
+            onLoaded.run();
+        } else {
+            // in background, the result will be set later
+            v_extra.append(getString(R.string.txt_loading));
+            var listener = !noListener;
+            clipLoader.load(item, content -> {
+                v_extra.setText(clipExtra);
+                if (content == null) {
+                    // unreadable (like an uri without permission): empty, without syncing it (the clipboard still has the clip)
+                    v_extra.append(getString(R.string.txt_load_error));
+                    var wasNoListener = noListener;
+                    noListener = true;
+                    setContent("");
+                    noListener = wasNoListener;
+                    return;
+                }
+                undoHistory.beginGroup();
+                if (listener) {
+                    setContent(content);
+                    onLoaded.run();
+                } else {
+                    noListener = true;
+                    setContent(content);
+                    onLoaded.run();
+                    noListener = false;
+                }
+                undoHistory.endGroup();
+            });
+        }
+    }
 
-            Log.d("CLIPBOARD", "--> [" + label + "] " + content);
+    /**
+     * Multiple items: sets the clip whose items are shown (null or a single item clip to disable)
+     */
+    private void setItems(ClipData clip) {
+        items = clip != null && clip.getItemCount() > 1 ? clip : null;
+        itemIndex = 0;
+        editedItems.clear();
+        v_items.setVisibility(items != null ? VISIBLE : GONE);
+        if (items != null) showItemIndex();
+    }
+
+    /**
+     * Multiple items: replaces the content input with the item at that index (coerced now, the first time it is opened)
+     */
+    private void openItem(int index) {
+        if (items == null || index < 0 || index >= items.getItemCount() || index == itemIndex) return;
+
+        // keep the current one, if edited
+        if (inputVersion != itemVersion) editedItems.put(itemIndex, getContent().toString());
+        itemIndex = index;
+        showItemIndex();
+
+        // the clip doesn't change, so nothing to sync (and if the clipboard had it, it still has)
+        clipLoader.cancel();
+        var version = inputVersion;
+        Runnable onLoaded = () -> {
+            itemVersion = inputVersion;
+            snapshot.moveInput(version, inputVersion);
+            // the changes were of the previous item
+            undoHistory.clear();
+            updateUndoButtons();
+        };
+        noListener = true;
+        var edited = editedItems.get(index);
+        if (edited != null) {
+            v_extra.setText(clipExtra);
+            setContent(edited);
+            onLoaded.run();
+        } else {
+            loadItem(items.getItemAt(index), onLoaded);
         }
+        noListener = false;
+    }
+
+    /**
+     * Multiple items: displays the current item index
+     */
+    private void showItemIndex() {
+        var count = items.getItemCount();
+        v_itemIndex.setText(getString(R.string.txt_item, itemIndex + 1, count));
+        findViewById(R.id.item_previous).setEnabled(itemIndex > 0);
+        findViewById(R.id.item_next).setEnabled(itemIndex < count - 1);
+    }
+
+    /**
+     * Sets the content (if different), entering or exiting large mode as needed.
+     * In normal mode only the changed part is replaced, keeping the cursor and scroll when possible
+     */
+    private void setContent(String content) {
+        if (content.length() > prefs.get(LARGE_THRESHOLD)) {
+            // large mode
+            if (large != null && large.contentEquals(content)) return;
+
+            large = new ChunkedText(content);
+            setWindow(0, large.boundary(LARGE_WINDOW));
+            v_extra.append(getString(R.string.txt_large));
+            // no undo in large mode
+            undoHistory.clear();
+            updateUndoButtons();
+        } else if (large != null) {
+            // exit large mode
+            large = null;
+            setWindow(0, 0);
+            v_content.setText(content);
+            undoHistory.clear();
+            updateUndoButtons();
+        } else {
+            // normal mode
+            replaceChanged(v_content.getText(), content);
+        }
+    }
+
+    /**
+     * @return the full content (the input itself, or the large mode text)
+     */
+    private CharSequence getContent() {
+        return large != null ? large : v_content.getText();
+    }
+
+    /**
+     * @return the full content, which can be read in a background thread while the input is edited (in large mode without copying it)
+     */
+    private CharSequence getContentSnapshot() {
+        return large != null ? large.snapshot() : v_content.getText().toString();
+    }
+
+    /**
+     * Replaces the whole content input with the [start, end) window of the large text (or empty if not in large mode).
+     * This is a content change (the window itself isn't)
+     */
+    private void setWindow(int start, int end) {
+        windowing = true;
+        windowStart = start;
+        v_content.setText(large == null ? "" : large.subSequence(start, end));
+        windowing = false;
+
+        resetStatistics();
+        draft.invalidate();
+        draftSave.request(DRAFT_DELAY);
+        resultDirty = true;
+        inputVersion++;
+        requestInputSync();
+    }
+
+    /**
+     * Large mode: if the visible part of the content input is near one of its edges, moves the window there
+     */
+    private void updateWindow() {
+        if (large == null || windowing) return;
+        var layout = v_content.getLayout();
+        if (layout == null) return;
+
+        // visible region, in content input coordinates
+        var top = v_scroll.getScrollY() - v_content.getTop();
+        var bottom = top + v_scroll.getHeight();
+        var editable = v_content.getText();
+        var windowEnd = windowStart + editable.length();
+
+        windowing = true;
+        if (bottom >= v_content.getHeight() - v_scroll.getHeight() && windowEnd < large.length()) {
+            // near the end, load the next page
+            editable.append(large.subSequence(windowEnd, large.boundary(windowEnd + LARGE_PAGE)));
+
+            // and drop the first ones if too big
+            var drop = editable.length() - LARGE_WINDOW;
+            if (drop > 0) {
+                if (Character.isLowSurrogate(editable.charAt(drop))) drop++;
+                var dy = layout.getLineTop(layout.getLineForOffset(drop));
+                editable.delete(0, drop);
+                windowStart += drop;
+                v_scroll.scrollBy(0, -dy);
+            }
+        } else if (top <= v_scroll.getHeight() && windowStart > 0) {
+            // near the start, load the previous page
+            var start = Math.max(0, windowStart - LARGE_PAGE);
+            if (start > 0 && Character.isLowSurrogate(large.charAt(start))) start--;
+            editable.insert(0, large.subSequence(start, windowStart));
+            var inserted = windowStart - start;
+            windowStart = start;
+            var dy = layout.getLineTop(layout.getLineForOffset(inserted));
+
+            // and drop the last ones if too big
+            var keep = LARGE_WINDOW;
+            if (editable.length() > keep) {
+                if (Character.isLowSurrogate(editable.charAt(keep))) keep++;
+                editable.delete(keep, editable.length());
+            }
+            // scroll once the new size is measured
+            v_scroll.post(() -> v_scroll.scrollBy(0, dy));
+        }
+        windowing = false;
     }
 
     /**
@@ -480,35 +1322,369 @@ public class Editor extends Activity {
         if (noListener) return;
         noListener = true;
 
-        // set
-        var clip = inputAsPrimaryClip();
-        clipboard.setPrimaryClip(clip);
+        // this sync includes the pending one (if any)
+        inputSync.cancel();
 
-        Log.d("CLIPBOARD", "Input --> " + clip);
+        if (snapshot.isInput(inputVersion) && clipboardIsSnapshot()) {
+            // already synced
+            Log.d("CLIPBOARD", "Skipped write, total: " + snapshot.skippedWrite());
+        } else {
+            // set
+            var sensitive = isSensitive();
+            var buffer = sensitive && items == null ? new char[getContent().length()] : null; // sensitive single text: copied here, then wiped
+            ClipData clip;
+            if (buffer != null) {
+                var content = getContent();
+                for (var i = 0; i < buffer.length; i++) buffer[i] = content.charAt(i);
+                clip = ClipData.newPlainText(v_label.getText().toString(), CharBuffer.wrap(buffer));
+            } else {
+                clip = inputAsPrimaryClip();
+            }
+            if (sensitive) SensitiveClip.mark(clip);
+            var start = metrics.start();
+            clipboard.setPrimaryClip(clip);
+            metrics.end(Metrics.Metric.SET_CLIP, start);
+            var description = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ? clipboard.getPrimaryClipDescription() : null;
+            snapshot.set(description, inputVersion, clip.getDescription().getLabel(), clip.getItemAt(0).getText());
+            if (buffer != null) Arrays.fill(buffer, '\0');
+            // saved in the clipboard, no need for a draft
+            draftSave.cancel();
+            draft.clear();
+
+            if (sensitive) {
+                SensitiveClip.scheduleClear(this, prefs.get(SENSITIVE_CLEAR_DELAY), SensitiveClip.getTimestamp(description));
+                Log.d("CLIPBOARD", "Input --> [sensitive]");
+            } else {
+                Log.d("CLIPBOARD", "Input --> " + clip);
+            }
+        }
 
         noListener = false;
     }
 
     /**
-     * Returns the input as primary clip
+     * Remembers the clip as synced with the current input
+     */
+    private void rememberClip(ClipData clip) {
+        snapshot.set(clip == null ? null : clip.getDescription(), inputVersion, v_label.getText(), getContent());
+        // same as the clipboard, no need for a draft
+        draftSave.cancel();
+        draft.clear();
+    }
+
+    /**
+     * @return true if the clipboard contains the snapshot clip (O(1) on Android O+, without reading the clip content)
+     */
+    private boolean clipboardIsSnapshot() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return snapshot.isClip(clipboard.getPrimaryClipDescription());
+        }
+        var start = metrics.start();
+        var clip = clipboard.getPrimaryClip();
+        metrics.end(Metrics.Metric.GET_CLIP, start);
+        return clip != null && clip.getItemCount() > 0 && snapshot.isClip(clip.getDescription().getLabel(), clip.getItemAt(0).getText());
+    }
+
+    /**
+     * Returns the input as primary clip (marked as sensitive in sensitive mode)
      */
     private ClipData inputAsPrimaryClip() {
-        return ClipData.newPlainText(v_label.getText().toString(), v_content.getText().toString());
+        var clip = buildClip();
+        if (isSensitive()) SensitiveClip.mark(clip);
+        return clip;
     }
 
-    /** Computes and diplays statistics about the textview content */
-    private void computeStatistics(Editable editable) {
-        if (prefs.is(STATISTICS)) {
-            var string = editable.toString();
-            var trimmed = string.trim();
-            v_statistics.setText(getString(R.string.statistics,
-                    /*lines*/ string.isEmpty() ? 0 : string.split("\\n", -1).length,
-                    /*words*/ trimmed.isEmpty() ? 0 : trimmed.split("\\s+").length,
-                    /*length*/ editable.length() == string.length() ? Integer.toString(string.length()) : string.length() + "(" + editable.length() + ")"
-            ));
+    /**
+     * Builds a clip from the inputs
+     */
+    private ClipData buildClip() {
+        // in large mode, this is the only place where the full content is materialized
+        var label = v_label.getText().toString();
+        var content = getContent().toString();
+        if (items == null) return ClipData.newPlainText(label, content);
+
+        // multiple items: the current one from the input, the edited ones as text, the untouched ones as they were (not coerced)
+        var description = items.getDescription();
+        var mimeTypes = new ArrayList<String>();
+        for (var i = 0; i < description.getMimeTypeCount(); i++) {
+            mimeTypes.add(description.getMimeType(i));
+        }
+        if (!description.hasMimeType(ClipDescription.MIMETYPE_TEXT_PLAIN)) mimeTypes.add(ClipDescription.MIMETYPE_TEXT_PLAIN);
+
+        ClipData clip = null;
+        for (var i = 0; i < items.getItemCount(); i++) {
+            var text = i == itemIndex ? content : editedItems.get(i);
+            var item = text != null ? new ClipData.Item(text) : items.getItemAt(i);
+            if (clip == null) clip = new ClipData(new ClipDescription(label, mimeTypes.toArray(new String[0])), item);
+            else clip.addItem(item);
         }
+        return clip;
     }
 
+    /**
+     * Syncs the input to the clipboard, if enabled (after a small delay, so a burst of typing is a single write)
+     */
+    private void requestInputSync() {
+        if (prefs.is(SYNC_INPUT) && !noListener) {
+            inputSync.request(prefs.get(SYNC_INPUT_DELAY));
+        }
+    }
+
+    /**
+     * Searches again after a small delay, if the find inputs are visible
+     */
+    private void requestFind() {
+        if (v_findBar.getVisibility() != VISIBLE) return;
+        // the matches being found are already outdated
+        finder.cancel();
+        findUpdate.request(FIND_DELAY);
+    }
+
+    /**
+     * Searches the query in the content, highlighting the matches as they are found
+     */
+    private void find() {
+        clearHighlights();
+        var query = v_findQuery.getText().toString();
+        if (v_findBar.getVisibility() != VISIBLE || query.isEmpty()) {
+            finder.cancel();
+            v_findCount.setText("");
+            return;
+        }
+
+        v_findCount.setText(R.string.txt_finding);
+        finder.find(getContentSnapshot(), query, v_findRegex.isChecked(), new Finder.Callback() {
+            @Override
+            public void onMatches(int[] starts, int[] ends, int count) {
+                // in large mode, only the ones in the current window
+                var editable = v_content.getText();
+                for (var i = 0; i < count && highlights.size() < FIND_MAX_HIGHLIGHTS; i++) {
+                    var start = starts[i] - windowStart;
+                    var end = ends[i] - windowStart;
+                    if (start < 0 || end > editable.length()) continue;
+                    var span = new BackgroundColorSpan(FIND_HIGHLIGHT_COLOR);
+                    editable.setSpan(span, start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                    highlights.add(span);
+                }
+            }
+
+            @Override
+            public void onFinished(int total, String error) {
+                v_findCount.setText(error != null ? error : getString(R.string.txt_matches, total));
+            }
+        });
+    }
+
+    /**
+     * Removes the highlights of the matches
+     */
+    private void clearHighlights() {
+        var editable = v_content.getText();
+        for (var span : highlights) {
+            editable.removeSpan(span);
+        }
+        highlights.clear();
+    }
+
+    /**
+     * Records the changes of an input in the undo history (except in large mode and sensitive mode)
+     */
+    private class UndoWatcher extends SimpleTextWatcher {
+        private final int field; // UNDO_CONTENT or UNDO_LABEL
+
+        UndoWatcher(int field) {
+            this.field = field;
+        }
+
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            if ((field == UNDO_CONTENT && (windowing || large != null)) || isSensitive()) return;
+            undoHistory.beforeChange(s, start, count);
+        }
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+            if ((field == UNDO_CONTENT && (windowing || large != null)) || isSensitive()) return;
+            undoHistory.afterChange(field, s, start, count);
+        }
+
+        @Override
+        public void afterTextChanged(Editable s) {
+            updateUndoButtons();
+        }
+    }
+
+    /**
+     * Records the changes of an input in the draft (except in sensitive mode)
+     */
+    private class DraftWatcher extends SimpleTextWatcher {
+        private final int field; // Draft.CONTENT or Draft.LABEL
+
+        DraftWatcher(int field) {
+            this.field = field;
+        }
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+            if ((field == Draft.CONTENT && windowing) || isSensitive()) return;
+            var offset = field == Draft.CONTENT ? windowStart : 0; // large mode
+            draft.change(field, offset + start, before, s.subSequence(start, start + count).toString());
+            draftSave.request(DRAFT_DELAY);
+        }
+    }
+
+    /**
+     * Saves the draft changes
+     */
+    private void saveDraft() {
+        if (isSensitive()) return;
+        draft.save(() -> new Draft.State(v_label.getText().toString(), getContentSnapshot()));
+    }
+
+    /**
+     * Applies an undo/redo change to its input
+     */
+    private void undoReplace(int field, int start, int end, String text) {
+        var input = field == UNDO_CONTENT ? v_content : v_label;
+        input.getText().replace(start, end, text);
+        if (input.hasFocus()) input.setSelection(start + text.length());
+    }
+
+    /**
+     * Enables the undo/redo buttons if there is something to undo/redo
+     */
+    private void updateUndoButtons() {
+        v_undo.setEnabled(undoHistory.canUndo());
+        v_undo.setAlpha(v_undo.isEnabled() ? 1f : 0.4f);
+        v_redo.setEnabled(undoHistory.canRedo());
+        v_redo.setAlpha(v_redo.isEnabled() ? 1f : 0.4f);
+    }
+
+    /**
+     * Applies the undo memory limit preference
+     */
+    private void setUndoMaxKb() {
+        undoHistory.setMaxChars(prefs.get(UNDO_MAX_KB) * 1024L / 2); // 2 bytes per char
+    }
+
+    /** Recomputes the statistics from scratch (after a content change not notified to the content watcher) */
+    private void resetStatistics() {
+        if (!statisticsReady) return;
+        statistics.reset(getContent());
+        if (isChecksumsEnabled()) {
+            checksums.reset(getContent().length());
+            requestChecksums();
+        }
+        showStatistics();
+    }
+
+    /** Displays the statistics about the textview content (they are kept updated by the content watcher), and the metrics if enabled */
+    private void showStatistics() {
+        if (!statisticsReady) return;
+        var text = prefs.is(STATISTICS) ? getString(R.string.statistics,
+                /*lines*/ statistics.getLines(),
+                /*words*/ statistics.getWords(),
+                /*length*/ Integer.toString(statistics.getLength())
+        ) : "";
+        if (prefs.is(CHECKSUMS)) {
+            text += (text.isEmpty() ? "" : "\n") + (isSensitive() ? getString(R.string.txt_checksums_sensitive)
+                    : checksumsText != null ? checksumsText : getString(R.string.txt_checksums_computing));
+        }
+        if (metrics.isEnabled()) {
+            // p50/p99 of each metric
+            text += (text.isEmpty() ? "" : "\n") + getString(R.string.txt_metrics, metrics.summary());
+        }
+        if (!text.isEmpty()) v_statistics.setText(text);
+    }
+
+    /** Shows the statistics view if there is something to show */
+    private void updateStatisticsVisibility() {
+        v_statistics.setVisibility(prefs.is(STATISTICS) || prefs.is(CHECKSUMS) || metrics.isEnabled() ? VISIBLE : GONE);
+    }
+
+    /** Starts or stops computing the checksums */
+    private void setChecksumsState(boolean state) {
+        checksumsUpdate.cancel();
+        checksums.cancel();
+        state = state && !isSensitive();
+        checksums.reset(state ? getContent().length() : 0);
+        if (state) requestChecksums();
+        showStatistics();
+        updateStatisticsVisibility();
+    }
+
+    /** The checksums are outdated, they will be computed once the changes stop */
+    private void requestChecksums() {
+        checksumsText = null;
+        checksumsUpdate.request(CHECKSUMS_DELAY);
+    }
+
+    /** Computes the checksums of the content in background (only the changed chunks are read here) */
+    private void updateChecksums() {
+        checksums.update(getContent(), (crc32c, sha256) -> {
+            checksumsText = getString(R.string.txt_checksums, crc32c, sha256);
+            showStatistics();
+        });
+    }
+
+    /** @return true if the checksums are computed (not in sensitive mode, the chunks would keep copies of the content) */
+    private boolean isChecksumsEnabled() {
+        return prefs.is(CHECKSUMS) && !isSensitive();
+    }
+
+    /** Enables or disables the metrics (new recordings start from scratch) */
+    private void setMetricsState(boolean state) {
+        if (state) metrics.reset();
+        metrics.setEnabled(state);
+        showStatistics();
+        updateStatisticsVisibility();
+    }
+
+
+    // ------------------- sensitive -------------------
+
+    /** @return true if in sensitive mode */
+    private boolean isSensitive() {
+        return sensitiveManual || sensitiveDetected;
+    }
+
+    /** The clip in the inputs is (or isn't) marked as sensitive */
+    private void setSensitiveDetected(boolean detected) {
+        var wasSensitive = isSensitive();
+        sensitiveDetected = detected;
+        updateSensitive(wasSensitive);
+    }
+
+    /** Applies the sensitive mode, if it changed */
+    private void updateSensitive(boolean wasSensitive) {
+        var sensitive = isSensitive();
+        v_sensitive.setAlpha(sensitive ? 1f : 0.4f);
+        if (sensitive == wasSensitive) return;
+
+        if (sensitive) {
+            // forget what was kept of the inputs
+            undoHistory.clear();
+            updateUndoButtons();
+            draftSave.cancel();
+            draft.clear();
+        } else {
+            // not needed anymore, and may clear a non-sensitive clip
+            SensitiveClip.cancelClear(this);
+            // the inputs can be saved again
+            draft.invalidate();
+            draftSave.request(DRAFT_DELAY);
+        }
+        setChecksumsState(prefs.is(CHECKSUMS));
+    }
+
+    /** Overwrites the inputs before emptying them (without syncing) */
+    private void wipeInputs() {
+        noListener = true;
+        SensitiveClip.wipe(v_content.getText());
+        SensitiveClip.wipe(v_label.getText());
+        noListener = false;
+        inputSync.cancel();
+    }
 
     // ------------------- utils -------------------
 
@@ -523,10 +1699,28 @@ public class Editor extends Activity {
     }
 
     /**
-     * @return a 'unique' id (should be unique unless called at the same millisecond or after a very VERY long time)
+     * Makes the editable equal to the text, by replacing only the part between their common prefix and suffix
+     * (so the watchers and the layout only process the changed part, and the spans like the selection outside it are kept)
      */
-    private static int getUniqueId() {
-        return Long.valueOf(System.currentTimeMillis()).intValue();
+    private static void replaceChanged(Editable editable, String text) {
+        var length = editable.length();
+        var textLength = text.length();
+        var max = Math.min(length, textLength);
+
+        // common prefix
+        var prefix = 0;
+        while (prefix < max && editable.charAt(prefix) == text.charAt(prefix)) prefix++;
+        if (prefix == length && prefix == textLength) return; // equal
+
+        // common suffix (not overlapping the prefix)
+        var suffix = 0;
+        while (suffix < max - prefix && editable.charAt(length - 1 - suffix) == text.charAt(textLength - 1 - suffix)) suffix++;
+
+        // don't split surrogate pairs
+        if (prefix > 0 && Character.isHighSurrogate(text.charAt(prefix - 1))) prefix--;
+        if (suffix > 0 && Character.isLowSurrogate(text.charAt(textLength - suffix))) suffix--;
+
+        editable.replace(prefix, length - suffix, text, prefix, textLength - suffix);
     }
 
 }
\ No newline at end of file
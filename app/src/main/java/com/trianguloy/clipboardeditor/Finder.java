@@ -0,0 +1,223 @@
+package com.trianguloy.clipboardeditor;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Finds and replaces (literal or regex) in a text, in a background thread (the text must not change meanwhile, like a snapshot).
+ * Only the latest operation is delivered: a new one cancels (and discards) the previous one.
+ * A match in progress can't be interrupted (on Android the regex engine is native, and works on its own copy of the text), so a cancelled or too slow operation is abandoned instead:
+ * its thread is left to finish alone, and the next operations run in a new one.
+ * All public methods must be called from the main thread.
+ */
+public class Finder {
+    private static final int BATCH = 256; // matches per delivery
+    private static final int TIMEOUT = 5000; // ms an operation can run before being abandoned
+    private static final int MAX_ABANDONED = 2; // abandoned operations still running, new ones are refused meanwhile
+
+    /** Receives the matches found, in the main thread */
+    public interface Callback {
+        /** More matches found, the first 'count' [start, end) pairs of the arrays */
+        void onMatches(int[] starts, int[] ends, int count);
+
+        /** All matches found, or error (null if none) */
+        void onFinished(int total, String error);
+    }
+
+    /** Receives the replaced text, in the main thread */
+    public interface ReplaceCallback {
+        /** The text with all matches replaced (null if error) */
+        void onReplaced(String result, int count, String error);
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger running = new AtomicInteger(); // operations running, including the abandoned ones
+    private final String timeoutError; // error of the too slow operations
+
+    private ExecutorService executor = Executors.newSingleThreadExecutor(); // replaced when an operation is abandoned
+    private Future<?> current = null; // the pending operation, if any
+    private Runnable timeout = null; // abandons the pending operation, if it takes too long
+    private int generation = 0; // increased on each operation/cancel, to discard superseded results
+
+    /**
+     * @param timeoutError error delivered when an operation takes too long (or while too many abandoned ones are still running)
+     */
+    public Finder(String timeoutError) {
+        this.timeoutError = timeoutError;
+    }
+
+    // ------------------- public -------------------
+
+    /**
+     * Finds all the non-empty matches of the query, delivered in batches as they are found
+     */
+    public void find(CharSequence text, String query, boolean regex, Callback callback) {
+        start(id -> {
+            try {
+                var matcher = matcher(text, query, regex);
+                var starts = new int[BATCH];
+                var ends = new int[BATCH];
+                var count = 0;
+                var total = 0;
+                while (matcher.find()) {
+                    if (Thread.interrupted()) throw new CancellationException();
+                    if (matcher.start() == matcher.end()) continue; // nothing to highlight
+                    starts[count] = matcher.start();
+                    ends[count] = matcher.end();
+                    count++;
+                    total++;
+                    if (count == BATCH) {
+                        var batchStarts = starts;
+                        var batchEnds = ends;
+                        post(id, false, () -> callback.onMatches(batchStarts, batchEnds, BATCH));
+                        starts = new int[BATCH];
+                        ends = new int[BATCH];
+                        count = 0;
+                    }
+                }
+
+                var batchStarts = starts;
+                var batchEnds = ends;
+                var batchCount = count;
+                var finalTotal = total;
+                post(id, true, () -> {
+                    if (batchCount > 0) callback.onMatches(batchStarts, batchEnds, batchCount);
+                    callback.onFinished(finalTotal, null);
+                });
+            } catch (CancellationException ignored) {
+                // superseded
+            } catch (RuntimeException e) {
+                post(id, true, () -> callback.onFinished(0, getMessage(e)));
+            }
+        }, () -> callback.onFinished(0, timeoutError));
+    }
+
+    /**
+     * Replaces all the matches of the query (in regex mode the replacement can reference groups, like $1)
+     */
+    public void replaceAll(CharSequence text, String query, boolean regex, String replacement, ReplaceCallback callback) {
+        start(id -> {
+            try {
+                var matcher = matcher(text, query, regex);
+                var result = new StringBuffer(text.length());
+                var count = 0;
+                while (matcher.find()) {
+                    if (Thread.interrupted()) throw new CancellationException();
+                    matcher.appendReplacement(result, regex ? replacement : Matcher.quoteReplacement(replacement));
+                    count++;
+                }
+                matcher.appendTail(result);
+
+                var finalCount = count;
+                post(id, true, () -> callback.onReplaced(result.toString(), finalCount, null));
+            } catch (CancellationException ignored) {
+                // superseded
+            } catch (RuntimeException e) {
+                post(id, true, () -> callback.onReplaced(null, 0, getMessage(e)));
+            }
+        }, () -> callback.onReplaced(null, 0, timeoutError));
+    }
+
+    /**
+     * Cancels the current operation (if any), its results will not be delivered
+     */
+    public void cancel() {
+        generation++;
+        if (timeout != null) {
+            handler.removeCallbacks(timeout);
+            timeout = null;
+        }
+        if (current != null) {
+            current.cancel(true);
+            current = null;
+            // it may be stuck in a match: leave it, the next operations will use a new thread
+            executor.shutdownNow();
+            executor = Executors.newSingleThreadExecutor();
+        }
+    }
+
+    /**
+     * Cancels everything and stops the background thread
+     */
+    public void destroy() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    // ------------------- internal -------------------
+
+    /** Background work of an operation */
+    private interface Operation {
+        void run(int id);
+    }
+
+    /**
+     * Runs the operation in background (cancelling the previous one), abandoning it if it takes too long
+     *
+     * @param onTimeout delivers the timeout error, in the main thread
+     */
+    private void start(Operation operation, Runnable onTimeout) {
+        cancel();
+        var id = generation;
+        if (running.get() >= MAX_ABANDONED) {
+            // slow ones are still running, don't add more
+            post(id, true, onTimeout);
+            return;
+        }
+
+        current = executor.submit(() -> {
+            running.incrementAndGet();
+            try {
+                operation.run(id);
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+        timeout = () -> {
+            timeout = null;
+            cancel();
+            onTimeout.run();
+        };
+        handler.postDelayed(timeout, TIMEOUT);
+    }
+
+    /**
+     * @return a matcher of the query in the text
+     */
+    private static Matcher matcher(CharSequence text, String query, boolean regex) {
+        return Pattern.compile(query, regex ? Pattern.MULTILINE : Pattern.LITERAL).matcher(text);
+    }
+
+    /**
+     * Runs the action in the main thread, unless superseded
+     *
+     * @param last if this is the last delivery of the operation
+     */
+    private void post(int id, boolean last, Runnable action) {
+        handler.post(() -> {
+            if (id != generation) return; // superseded
+            if (last) {
+                current = null;
+                if (timeout != null) handler.removeCallbacks(timeout);
+                timeout = null;
+            }
+            action.run();
+        });
+    }
+
+    /**
+     * @return a short description of the error
+     */
+    private static String getMessage(RuntimeException e) {
+        return e instanceof PatternSyntaxException syntax ? syntax.getDescription() : e.getMessage();
+    }
+}
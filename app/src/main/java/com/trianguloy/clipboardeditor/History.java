@@ -0,0 +1,445 @@
+package com.trianguloy.clipboardeditor;
+
+import static com.trianguloy.clipboardeditor.Preferences.Pref.HISTORY_MAX_COUNT;
+import static com.trianguloy.clipboardeditor.Preferences.Pref.HISTORY_MAX_KB;
+
+import android.content.ClipData;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Clipboard history.
+ * Entries are appended to a log file, and only their metadata and a short preview are kept in memory (the full texts are read when needed, with a small cache).
+ * The oldest entries are evicted when there are too many of them or they take too much space, and the file is compacted when most of it are evicted entries.
+ * <p>
+ * All disk access is done in a background thread, public methods can be called from the main thread.
+ */
+public class History {
+    private static final String FILE = "history.log";
+    private static final int PREVIEW_CHARS = 256; // chars of each text kept in memory (for display and search)
+    private static final int CACHE_CHARS = 1_000_000; // max chars of full texts kept in memory
+    private static final int COMPACT_MIN_BYTES = 64 * 1024; // don't compact if the evicted entries are less than this
+
+    /** Receives the text of an entry, in the main thread (null if it can't be read) */
+    public interface Callback {
+        void onText(String text);
+    }
+
+    /** An entry of the history (without its full text) */
+    public static class Entry {
+        public final long time; // when it was added
+        public final String label;
+        public final String[] mimeTypes;
+        public final String preview; // the first chars of the text
+        private final int hash; // of the full text
+        private final int length; // of the full text
+        private final String key; // lowercase label+preview, for search
+
+        private long offset; // of the record in the file, -1 once evicted (it can't be read anymore)
+        private int size; // of the record in the file, in bytes
+
+        private Entry(long time, String label, String[] mimeTypes, String preview, int hash, int length) {
+            this.time = time;
+            this.label = label;
+            this.mimeTypes = mimeTypes;
+            this.preview = preview;
+            this.hash = hash;
+            this.length = length;
+            this.key = (label + "\n" + preview).toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Context context;
+    private final Preferences prefs; // for the limits
+    private final File file;
+
+    // guarded by 'this'
+    private final List<Entry> entries = new ArrayList<>(); // oldest first
+    private final LinkedHashMap<Entry, String> cache = new LinkedHashMap<>(16, 0.75f, true); // recently used texts
+    private int cacheChars = 0;
+    private long fileLength = 0; // bytes
+    private long liveBytes = 0; // bytes of the non-evicted entries
+
+    private static History instance = null;
+
+    /**
+     * @return the history of this process (it outlives the activities, to be used as the clipboard monitor sink). Created, and loaded in background, on the first call
+     */
+    public static synchronized History get(Context context, Preferences prefs) {
+        if (instance == null) instance = new History(context, prefs);
+        return instance;
+    }
+
+    private History(Context context, Preferences prefs) {
+        this.context = context.getApplicationContext();
+        this.prefs = prefs;
+        file = new File(this.context.getFilesDir(), FILE);
+        executor.execute(this::load);
+    }
+
+    // ------------------- public -------------------
+
+    /**
+     * Adds the clip to the history (unless it is the same as the last one, or sensitive)
+     */
+    public void add(ClipData clip) {
+        if (clip == null || clip.getItemCount() == 0) return;
+        if (SensitiveClip.isSensitive(clip.getDescription())) return; // never kept
+        var time = System.currentTimeMillis();
+        var description = clip.getDescription();
+        var label = description.getLabel() == null ? "" : description.getLabel().toString();
+        var mimeTypes = new String[description.getMimeTypeCount()];
+        for (var i = 0; i < mimeTypes.length; i++) mimeTypes[i] = description.getMimeType(i);
+        var item = clip.getItemAt(0);
+
+        executor.execute(() -> {
+            var coerced = item.coerceToText(context);
+            var text = coerced == null ? "" : coerced.toString();
+            var entry = new Entry(time, label, mimeTypes, preview(text), text.hashCode(), text.length());
+
+            synchronized (this) {
+                // same as last, skip
+                if (!entries.isEmpty()) {
+                    var last = entries.get(entries.size() - 1);
+                    if (last.hash == entry.hash && last.length == entry.length && last.label.equals(entry.label)) return;
+                }
+            }
+
+            try {
+                append(entry, text);
+            } catch (IOException e) {
+                Log.e("HISTORY", "Unable to save entry", e);
+                return;
+            }
+            synchronized (this) {
+                entries.add(entry);
+                liveBytes += entry.size;
+                cache(entry, text);
+            }
+            evict();
+        });
+    }
+
+    /**
+     * @return the entries whose label or beginning of the text contains the query (ignoring case), newest first
+     */
+    public synchronized List<Entry> search(String query, int limit) {
+        query = query.toLowerCase(Locale.ROOT);
+        var result = new ArrayList<Entry>();
+        for (var i = entries.size() - 1; i >= 0 && result.size() < limit; i--) {
+            var entry = entries.get(i);
+            if (entry.key.contains(query)) result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the full text of the entry (from memory or disk), null on error (or if the entry was evicted)
+     */
+    public void getText(Entry entry, Callback callback) {
+        synchronized (this) {
+            var text = cache.get(entry);
+            if (text != null) {
+                callback.onText(text);
+                return;
+            }
+        }
+
+        executor.execute(() -> {
+            try {
+                var text = read(entry);
+                synchronized (this) {
+                    cache(entry, text);
+                }
+                handler.post(() -> callback.onText(text));
+            } catch (IOException e) {
+                Log.e("HISTORY", "Unable to read entry", e);
+                handler.post(() -> callback.onText(null));
+            }
+        });
+    }
+
+    /**
+     * Removes all entries
+     */
+    public void clear() {
+        executor.execute(() -> {
+            synchronized (this) {
+                for (var entry : entries) entry.offset = -1;
+                entries.clear();
+                cache.clear();
+                cacheChars = 0;
+                fileLength = 0;
+                liveBytes = 0;
+            }
+            if (!file.delete() && file.exists()) Log.e("HISTORY", "Unable to delete history");
+        });
+    }
+
+    // ------------------- disk -------------------
+
+    /* Record format:
+     * int size (bytes after this int)
+     * long time
+     * int hash
+     * int length
+     * utf label
+     * int mimetypes count
+     * utf mimetype (count times)
+     * int text bytes
+     * byte[] text (utf-8)
+     */
+
+    /**
+     * Loads the entries from the file (a corrupted tail, like an interrupted write, is discarded)
+     */
+    private void load() {
+        if (!file.exists()) return;
+
+        var loaded = new ArrayList<Entry>();
+        var fileBytes = file.length();
+        long offset = 0;
+        try (var in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                // the stored lengths are checked before being used, a corrupted one ends the load
+                var size = in.readInt();
+                if (size < 0 || size > fileBytes - offset - 4) throw new EOFException();
+                var time = in.readLong();
+                var hash = in.readInt();
+                var length = in.readInt();
+                var label = in.readUTF();
+                var mimeTypesCount = in.readInt();
+                if (mimeTypesCount < 0 || mimeTypesCount > size / 2) throw new EOFException();
+                var mimeTypes = new String[mimeTypesCount];
+                var recordBytes = 8 + 4 + 4 + utfBytes(label) + 4 + 4;
+                for (var i = 0; i < mimeTypes.length; i++) {
+                    mimeTypes[i] = in.readUTF();
+                    recordBytes += utfBytes(mimeTypes[i]);
+                }
+                var textBytes = in.readInt();
+                if (textBytes < 0 || textBytes != size - recordBytes) throw new EOFException();
+                // only the beginning is needed (utf-8 is at most 4 bytes per char)
+                var previewBytes = new byte[Math.min(textBytes, PREVIEW_CHARS * 4)];
+                in.readFully(previewBytes);
+                if (in.skipBytes(textBytes - previewBytes.length) != textBytes - previewBytes.length) throw new EOFException();
+
+                var entry = new Entry(time, label, mimeTypes, preview(new String(previewBytes, StandardCharsets.UTF_8)), hash, length);
+                entry.offset = offset;
+                entry.size = 4 + size;
+                loaded.add(entry);
+                offset += entry.size;
+            }
+        } catch (EOFException e) {
+            // end (or corrupted tail)
+        } catch (IOException e) {
+            Log.e("HISTORY", "Unable to load history", e);
+        }
+
+        // discard corrupted tail, if any
+        if (offset != file.length()) {
+            try (var raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(offset);
+            } catch (IOException e) {
+                Log.e("HISTORY", "Unable to truncate history", e);
+            }
+        }
+
+        synchronized (this) {
+            entries.addAll(0, loaded);
+            fileLength = offset;
+            for (var entry : loaded) liveBytes += entry.size;
+        }
+        evict();
+    }
+
+    /**
+     * Appends the entry to the file, and sets its position
+     */
+    private void append(Entry entry, String text) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var body = new DataOutputStream(bytes);
+        body.writeLong(entry.time);
+        body.writeInt(entry.hash);
+        body.writeInt(entry.length);
+        body.writeUTF(entry.label.length() > 1000 ? entry.label.substring(0, 1000) : entry.label); // writeUTF is limited to 64KB
+        body.writeInt(entry.mimeTypes.length);
+        for (var mimeType : entry.mimeTypes) body.writeUTF(mimeType);
+        var textBytes = text.getBytes(StandardCharsets.UTF_8);
+        body.writeInt(textBytes.length);
+        body.write(textBytes);
+
+        try (var out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+
+        synchronized (this) {
+            entry.offset = fileLength;
+            entry.size = 4 + bytes.size();
+            fileLength += entry.size;
+        }
+    }
+
+    /**
+     * @return the full text of the entry, from the file
+     * @throws IOException if evicted, or if the record doesn't match the entry
+     */
+    private String read(Entry entry) throws IOException {
+        long offset;
+        int size;
+        synchronized (this) {
+            offset = entry.offset;
+            size = entry.size;
+        }
+        if (offset < 0) throw new IOException("Evicted entry");
+
+        try (var raf = new RandomAccessFile(file, "r")) {
+            var end = offset + size;
+            if (end > raf.length()) throw new IOException("Entry out of the file");
+            raf.seek(offset);
+            if (raf.readInt() != size - 4) throw new IOException("Corrupted entry");
+            raf.seek(offset + 4 + 8 + 4 + 4);
+            raf.readUTF(); // label
+            var mimeTypes = raf.readInt();
+            if (mimeTypes < 0 || mimeTypes > size / 2) throw new IOException("Corrupted entry");
+            for (var i = 0; i < mimeTypes; i++) raf.readUTF();
+            // the text is the rest of the record
+            var textBytes = raf.readInt();
+            if (textBytes < 0 || textBytes != end - raf.getFilePointer()) throw new IOException("Corrupted entry");
+            var bytes = new byte[textBytes];
+            raf.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Removes the oldest entries while over the limits, then compacts the file if it's mostly evicted entries
+     */
+    private void evict() {
+        var maxCount = prefs.get(HISTORY_MAX_COUNT);
+        var maxBytes = prefs.get(HISTORY_MAX_KB) * 1024L;
+
+        synchronized (this) {
+            while (!entries.isEmpty() && (entries.size() > maxCount || liveBytes > maxBytes)) {
+                var entry = entries.remove(0);
+                entry.offset = -1;
+                liveBytes -= entry.size;
+                var text = cache.remove(entry);
+                if (text != null) cacheChars -= text.length();
+            }
+            if (fileLength - liveBytes < Math.max(liveBytes, COMPACT_MIN_BYTES)) return;
+        }
+
+        compact();
+    }
+
+    /**
+     * Rewrites the file with the non-evicted entries only
+     */
+    private void compact() {
+        var temp = new File(file.getPath() + ".tmp");
+        List<Entry> live;
+        synchronized (this) {
+            live = new ArrayList<>(entries);
+        }
+
+        var offsets = new long[live.size()];
+        try (var in = new RandomAccessFile(file, "r");
+             var out = new BufferedOutputStream(new FileOutputStream(temp))) {
+            long offset = 0;
+            var buffer = new byte[8192];
+            for (var i = 0; i < live.size(); i++) {
+                var entry = live.get(i);
+                in.seek(entry.offset);
+                var remaining = entry.size;
+                while (remaining > 0) {
+                    var read = in.read(buffer, 0, Math.min(buffer.length, remaining));
+                    if (read < 0) throw new EOFException();
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+                offsets[i] = offset;
+                offset += entry.size;
+            }
+        } catch (IOException e) {
+            Log.e("HISTORY", "Unable to compact history", e);
+            if (!temp.delete()) Log.e("HISTORY", "Unable to delete temporal file");
+            return;
+        }
+
+        if (!temp.renameTo(file)) {
+            Log.e("HISTORY", "Unable to replace history");
+            return;
+        }
+        synchronized (this) {
+            long length = 0;
+            for (var i = 0; i < live.size(); i++) {
+                live.get(i).offset = offsets[i];
+                length += live.get(i).size;
+            }
+            fileLength = length;
+        }
+    }
+
+    // ------------------- utils -------------------
+
+    /**
+     * Keeps the text in memory, removing the least recently used ones if there are too many. Must hold 'this'
+     */
+    private void cache(Entry entry, String text) {
+        if (text.length() > CACHE_CHARS) return;
+        var previous = cache.put(entry, text);
+        if (previous != null) cacheChars -= previous.length();
+        cacheChars += text.length();
+
+        Iterator<Map.Entry<Entry, String>> iterator = cache.entrySet().iterator();
+        while (cacheChars > CACHE_CHARS && iterator.hasNext()) {
+            cacheChars -= iterator.next().getValue().length();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return the bytes written by DataOutput#writeUTF for the string (modified utf-8, with its length)
+     */
+    private static int utfBytes(String string) {
+        var bytes = 2;
+        for (var i = 0; i < string.length(); i++) {
+            var c = string.charAt(i);
+            bytes += c >= 0x01 && c <= 0x7F ? 1 : c <= 0x7FF ? 2 : 3;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the beginning of the text
+     */
+    private static String preview(String text) {
+        return text.length() <= PREVIEW_CHARS ? text : text.substring(0, PREVIEW_CHARS);
+    }
+}
@@ -0,0 +1,206 @@
+package com.trianguloy.clipboardeditor;
+
+import android.text.Editable;
+import android.text.TextWatcher;
+
+import java.util.Arrays;
+
+/**
+ * Opt-in performance instrumentation: durations are recorded into fixed-size histograms, one for each measured operation.
+ * Recording doesn't allocate, and does nothing (besides a check) while disabled.
+ * Must be used from a single thread (the main one).
+ */
+public class Metrics {
+
+    /** What is measured */
+    public enum Metric {
+        WATCHER_STATISTICS("watcher: statistics"),
+        WATCHER_DRAFT("watcher: draft"),
+        WATCHER_UNDO("watcher: undo"),
+        WATCHER_SYNC("watcher: sync"),
+        WATCHER_RESULT("watcher: result"),
+        WATCHER_FIND("watcher: find"),
+        GET_CLIP("getPrimaryClip"),
+        SET_CLIP("setPrimaryClip"),
+        CLIP_TO_INPUT("clipToInput"),
+        ;
+
+        private final String name;
+
+        Metric(String name) {
+            this.name = name;
+        }
+    }
+
+    /*
+     * Buckets, in microseconds: values below 16 have their own bucket, bigger ones are split in 8 buckets per power of two
+     * (so the reported values have an error below 12.5%).
+     */
+    private static final int LINEAR = 16;
+    private static final int SUB_BITS = 3;
+    private static final int SUBS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40; // ~12 days, longer values are clamped
+    private static final int BUCKETS = LINEAR + (MAX_EXPONENT - 4 + 1) * SUBS;
+
+    private final long[][] counts = new long[Metric.values().length][BUCKETS];
+    private final long[] totals = new long[Metric.values().length]; // recorded values
+    private final long[] maxMicros = new long[Metric.values().length];
+    private boolean enabled = false;
+
+    // ------------------- record -------------------
+
+    /**
+     * Enables or disables the recording (the recorded values are kept)
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the start of a measure, to pass to {@link #end(Metric, long)}
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the duration since the start
+     */
+    public void end(Metric metric, long start) {
+        if (!enabled || start == 0) return;
+        var micros = (System.nanoTime() - start) / 1000;
+        var i = metric.ordinal();
+        counts[i][bucket(micros)]++;
+        totals[i]++;
+        if (micros > maxMicros[i]) maxMicros[i] = micros;
+    }
+
+    /**
+     * @return a watcher that runs the given one, measuring each callback
+     */
+    public TextWatcher timed(Metric metric, TextWatcher watcher) {
+        return new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                var begin = start();
+                watcher.beforeTextChanged(s, start, count, after);
+                end(metric, begin);
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                var begin = start();
+                watcher.onTextChanged(s, start, before, count);
+                end(metric, begin);
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                var begin = start();
+                watcher.afterTextChanged(s);
+                end(metric, begin);
+            }
+        };
+    }
+
+    /**
+     * Forgets all the recorded values
+     */
+    public void reset() {
+        for (var metricCounts : counts) Arrays.fill(metricCounts, 0);
+        Arrays.fill(totals, 0);
+        Arrays.fill(maxMicros, 0);
+    }
+
+    // ------------------- read -------------------
+
+    /**
+     * @return the approximated percentile (0-100) of the metric, in microseconds, -1 if nothing was recorded
+     */
+    public long percentile(Metric metric, int percentile) {
+        var i = metric.ordinal();
+        if (totals[i] == 0) return -1;
+        var target = Math.max(1, (totals[i] * percentile + 99) / 100); // rank of the value
+        var seen = 0L;
+        for (var bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[i][bucket];
+            if (seen >= target) return Math.min(upperBound(bucket), maxMicros[i]);
+        }
+        return maxMicros[i];
+    }
+
+    /**
+     * @return a short line with the p50/p99 of the recorded metrics
+     */
+    public String summary() {
+        var summary = new StringBuilder();
+        for (var metric : Metric.values()) {
+            if (totals[metric.ordinal()] == 0) continue;
+            if (summary.length() > 0) summary.append(" | ");
+            summary.append(metric.name).append(' ')
+                    .append(format(percentile(metric, 50))).append('/')
+                    .append(format(percentile(metric, 99)));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * @return a text report with all the histograms
+     */
+    public String report() {
+        var report = new StringBuilder("Durations (count, p50, p90, p99, max), buckets as [upper bound]: count\n");
+        for (var metric : Metric.values()) {
+            var i = metric.ordinal();
+            report.append('\n').append(metric.name).append(": ").append(totals[i]);
+            if (totals[i] == 0) {
+                report.append('\n');
+                continue;
+            }
+            report.append(", ").append(format(percentile(metric, 50)))
+                    .append(", ").append(format(percentile(metric, 90)))
+                    .append(", ").append(format(percentile(metric, 99)))
+                    .append(", ").append(format(maxMicros[i])).append('\n');
+            for (var bucket = 0; bucket < BUCKETS; bucket++) {
+                if (counts[i][bucket] == 0) continue;
+                report.append("  [").append(format(upperBound(bucket))).append("]: ").append(counts[i][bucket]).append('\n');
+            }
+        }
+        return report.toString();
+    }
+
+    // ------------------- utils -------------------
+
+    /**
+     * @return the bucket of the value
+     */
+    private static int bucket(long micros) {
+        if (micros < LINEAR) return (int) Math.max(micros, 0);
+        var exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT); // >= 4
+        if (exponent == MAX_EXPONENT && micros >>> MAX_EXPONENT > 1) return BUCKETS - 1;
+        var sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUBS - 1);
+        return LINEAR + (exponent - 4) * SUBS + sub;
+    }
+
+    /**
+     * @return the biggest value of the bucket
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < LINEAR) return bucket;
+        var exponent = (bucket - LINEAR) / SUBS + 4;
+        var sub = (bucket - LINEAR) % SUBS;
+        return ((long) (SUBS + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+    /**
+     * @return the duration, readable
+     */
+    private static String format(long micros) {
+        if (micros < 1000) return micros + "\u00b5s";
+        if (micros < 1_000_000) return micros / 1000 + "." + micros / 100 % 10 + "ms";
+        return micros / 1_000_000 + "." + micros / 100_000 % 10 + "s";
+    }
+}
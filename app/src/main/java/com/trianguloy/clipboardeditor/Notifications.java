@@ -0,0 +1,133 @@
+package com.trianguloy.clipboardeditor;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.ClipData;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Notifications with a clip, which open the editor with it when clicked.
+ * The channel is created once, ids come from a persisted counter, the displayed text is capped,
+ * and big clips are spilled to the cache instead of sent in the intent (see {@link ClipTransport}).
+ * Notifications are built and published in a background thread.
+ */
+public class Notifications {
+    private static final String CHANNEL_ID = "text"; // id for the channel for notifications
+    private static final String PREFS = "notifications";
+    private static final String LAST_ID = "lastId";
+    private static final int PREVIEW_CHARS = 5 * 1024; // the system truncates longer texts anyway
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static boolean channelCreated = false; // per process
+
+    private final Context context;
+    private final NotificationManager manager;
+    private final SharedPreferences prefs; // for the id counter
+
+    public Notifications(Context context) {
+        this.context = context.getApplicationContext();
+        manager = (NotificationManager) this.context.getSystemService(Context.NOTIFICATION_SERVICE);
+        prefs = this.context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return true if notifications can be posted (Android 13+ needs a permission)
+     */
+    public boolean areEnabled() {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.N || manager.areNotificationsEnabled();
+    }
+
+    /**
+     * Setups the notification channel in Oreo+, once
+     */
+    public void createChannel() {
+        synchronized (Notifications.class) {
+            if (channelCreated) return;
+            channelCreated = true;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            var channel = new NotificationChannel(CHANNEL_ID, context.getString(R.string.channel_name), NotificationManager.IMPORTANCE_DEFAULT);
+            channel.setDescription(context.getString(R.string.channel_description));
+            manager.createNotificationChannel(channel);
+        }
+    }
+
+    /**
+     * Shows a new notification
+     *
+     * @param clip the clip to open when clicked
+     * @param text its text, to display
+     */
+    public void show(ClipData clip, String text) {
+        var label = clip.getDescription().getLabel() == null ? "" : clip.getDescription().getLabel().toString();
+        executor.execute(() -> {
+            createChannel();
+            var id = nextId();
+
+            Notification.Builder builder;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                // notification channel in Oreo+
+                builder = new Notification.Builder(context, CHANNEL_ID);
+            } else {
+                // no notification channel before Oreo
+                builder = new Notification.Builder(context);
+            }
+
+            // sets the label as notification title (if any), the content and icon
+            var preview = text.length() > PREVIEW_CHARS ? text.substring(0, PREVIEW_CHARS) + "\u2026" : text;
+            if (!label.isEmpty()) builder.setContentTitle(label);
+            builder.setContentText(preview);
+            builder.setSmallIcon(R.drawable.ic_notification);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                // when allowed, set the content as big text (improved display)
+                builder.setStyle(new Notification.BigTextStyle()
+                        .bigText(preview));
+            }
+
+            // sets the intent for when you click the notification. It will open the app with the clip
+            var intent = new Intent(context, Editor.class);
+            putClip(intent, clip, label, text);
+            builder.setContentIntent(PendingIntent.getActivity(context, id, intent, PendingIntent.FLAG_UPDATE_CURRENT | (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0))); // the id as requestCode, for multiple independent pendingIntents
+
+            // publish the notification
+            manager.notify(id,
+                    Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? builder.build() : builder.getNotification()
+            );
+        });
+    }
+
+    // ------------------- utils -------------------
+
+    /**
+     * @return a new id, unique (until it overflows). Only called from the executor
+     */
+    private int nextId() {
+        var id = prefs.getInt(LAST_ID, 0) + 1;
+        prefs.edit().putInt(LAST_ID, id).apply();
+        return id;
+    }
+
+    /**
+     * Puts the clip in the intent (the notification can be clicked multiple times, so it is not temporary)
+     */
+    private void putClip(Intent intent, ClipData clip, String label, String text) {
+        try {
+            ClipTransport.put(context, intent, clip, text, false);
+        } catch (IOException e) {
+            // can't be spilled, send the preview at least
+            Log.e("NOTIFICATION", "Unable to cache the clip", e);
+            intent.putExtra(context.getPackageName(), ClipData.newPlainText(label, text.substring(0, Math.min(text.length(), PREVIEW_CHARS))));
+        }
+    }
+}
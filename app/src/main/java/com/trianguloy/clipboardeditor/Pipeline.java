@@ -0,0 +1,667 @@
+package com.trianguloy.clipboardeditor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+/**
+ * A named chain of text operators, applied in a single streaming pass: the text is fed in pieces, and each operator processes them
+ * as they come and passes its output to the next one, so no intermediate full texts are built (except by sort, which needs all the lines).
+ * Pure java (no android classes).
+ */
+public class Pipeline {
+    private static final int PIECE = 8 * 1024; // chars fed at once, and max buffered by an operator before passing them
+
+    /** Receives text, piece by piece */
+    private interface Stage {
+        /** Processes text[start, end), the text is only valid during the call */
+        void write(CharSequence text, int start, int end);
+
+        /** No more text */
+        void end();
+    }
+
+    /** The operators, each one creates its stage */
+    public enum Operator {
+        TRIM {
+            @Override
+            Stage newStage(Stage next) {
+                return new TrimStage(next);
+            }
+        },
+        TRIM_LINES {
+            @Override
+            Stage newStage(Stage next) {
+                return new LineStage(next) {
+                    @Override
+                    void onLine(String line) {
+                        emit(line.trim());
+                    }
+                };
+            }
+        },
+        SORT_LINES {
+            @Override
+            Stage newStage(Stage next) {
+                return new SortStage(next);
+            }
+        },
+        DEDUPE_LINES {
+            @Override
+            Stage newStage(Stage next) {
+                return new LineStage(next) {
+                    private final Set<String> seen = new HashSet<>();
+
+                    @Override
+                    void onLine(String line) {
+                        if (seen.add(line)) emit(line);
+                    }
+                };
+            }
+        },
+        UPPERCASE {
+            @Override
+            Stage newStage(Stage next) {
+                return new CaseStage(next, true);
+            }
+        },
+        LOWERCASE {
+            @Override
+            Stage newStage(Stage next) {
+                return new CaseStage(next, false);
+            }
+        },
+        BASE64_ENCODE {
+            @Override
+            Stage newStage(Stage next) {
+                return new Base64EncodeStage(next);
+            }
+        },
+        BASE64_DECODE {
+            @Override
+            Stage newStage(Stage next) {
+                return new Base64DecodeStage(next);
+            }
+        },
+        URL_ENCODE {
+            @Override
+            Stage newStage(Stage next) {
+                return new UrlEncodeStage(next);
+            }
+        },
+        URL_DECODE {
+            @Override
+            Stage newStage(Stage next) {
+                return new UrlDecodeStage(next);
+            }
+        },
+        ;
+
+        /**
+         * @return a new stage of this operator, that outputs to next
+         */
+        abstract Stage newStage(Stage next);
+
+        /**
+         * @return the operator with that name, or null if there is none
+         */
+        public static Operator find(String name) {
+            for (var operator : values()) {
+                if (operator.name().equals(name)) return operator;
+            }
+            return null;
+        }
+    }
+
+    private final String name;
+    private final List<Operator> operators;
+
+    public Pipeline(String name, List<Operator> operators) {
+        this.name = name.replace('\t', ' ').replace('\n', ' ').trim(); // used as separators when stored
+        this.operators = Collections.unmodifiableList(new ArrayList<>(operators));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Operator> getOperators() {
+        return operators;
+    }
+
+    // ------------------- apply -------------------
+
+    /**
+     * Applies the operators to the text. Can be called from any thread, if interrupted a CancellationException is thrown
+     *
+     * @return the transformed text
+     * @throws IllegalArgumentException if the text is not valid for an operator (like decoding an invalid base64)
+     */
+    public String apply(CharSequence text) {
+        var output = new StringBuilder(text.length());
+
+        // chain, from the last one
+        Stage stage = new Stage() {
+            @Override
+            public void write(CharSequence text, int start, int end) {
+                output.append(text, start, end);
+            }
+
+            @Override
+            public void end() {
+            }
+        };
+        for (var i = operators.size() - 1; i >= 0; i--) stage = operators.get(i).newStage(stage);
+
+        // feed
+        for (var start = 0; start < text.length(); start += PIECE) {
+            if (Thread.interrupted()) throw new CancellationException();
+            stage.write(text, start, Math.min(start + PIECE, text.length()));
+        }
+        stage.end();
+        return output.toString();
+    }
+
+    // ------------------- serialization -------------------
+
+    /**
+     * @return this pipeline as a single line
+     */
+    public String serialize() {
+        var line = new StringBuilder(name).append('\t');
+        for (var i = 0; i < operators.size(); i++) {
+            if (i > 0) line.append(',');
+            line.append(operators.get(i).name());
+        }
+        return line.toString();
+    }
+
+    /**
+     * @return the pipeline of the line (unknown operators are skipped), null if invalid
+     */
+    public static Pipeline parse(String line) {
+        var separator = line.indexOf('\t');
+        if (separator == -1) return null;
+        var operators = new ArrayList<Operator>();
+        for (var operatorName : line.substring(separator + 1).split(",")) {
+            var operator = Operator.find(operatorName);
+            if (operator != null) operators.add(operator);
+        }
+        return new Pipeline(line.substring(0, separator), operators);
+    }
+
+    // ------------------- stages -------------------
+
+    /**
+     * A stage that buffers its output, passed to the next one at the end of each write
+     */
+    private abstract static class BufferedStage implements Stage {
+        final Stage next;
+        final StringBuilder out = new StringBuilder();
+
+        BufferedStage(Stage next) {
+            this.next = next;
+        }
+
+        void flush() {
+            if (out.length() == 0) return;
+            next.write(out, 0, out.length());
+            out.setLength(0);
+        }
+    }
+
+    /**
+     * Removes the leading and trailing whitespace of the whole text (same as {@link String#trim()}).
+     * Only a run of whitespace is kept, until it is known if it is trailing or not
+     */
+    private static class TrimStage extends BufferedStage {
+        private boolean started = false; // true once a non-whitespace char was found
+
+        TrimStage(Stage next) {
+            super(next);
+        }
+
+        @Override
+        public void write(CharSequence text, int start, int end) {
+            var run = start; // start of the current non-whitespace run
+            for (var i = start; i < end; i++) {
+                if (text.charAt(i) > ' ') continue;
+                // whitespace, pass the run before it (and the whitespace before that)
+                if (run < i) {
+                    if (started) flush();
+                    next.write(text, run, i);
+                    started = true;
+                }
+                if (started) out.append(text.charAt(i));
+                run = i + 1;
+            }
+            if (run < end) {
+                if (started) flush();
+                next.write(text, run, end);
+                started = true;
+            }
+        }
+
+        @Override
+        public void end() {
+            // the pending whitespace is trailing
+            next.end();
+        }
+    }
+
+    /**
+     * Changes the case. The text is converted in pieces that end at whitespace, so the rules that depend on the surrounding chars still work
+     */
+    private static class CaseStage implements Stage {
+        private final Stage next;
+        private final boolean upper;
+        private final StringBuilder buffer = new StringBuilder();
+
+        CaseStage(Stage next, boolean upper) {
+            this.next = next;
+            this.upper = upper;
+        }
+
+        @Override
+        public void write(CharSequence text, int start, int end) {
+            buffer.append(text, start, end);
+            if (buffer.length() >= PIECE) convert(false);
+        }
+
+        @Override
+        public void end() {
+            convert(true);
+            next.end();
+        }
+
+        /**
+         * Converts the buffer up to its last whitespace (or all of it)
+         */
+        private void convert(boolean all) {
+            var cut = buffer.length();
+            if (!all) {
+                while (cut > 0 && !Character.isWhitespace(buffer.charAt(cut - 1))) cut--;
+                if (cut == 0) {
+                    // a very long word, don't wait more (but don't split a surrogate pair)
+                    if (buffer.length() < 4 * PIECE) return;
+                    cut = buffer.length();
+                    if (Character.isHighSurrogate(buffer.charAt(cut - 1))) cut--;
+                }
+            }
+            var piece = buffer.substring(0, cut);
+            var converted = upper ? piece.toUpperCase(Locale.getDefault()) : piece.toLowerCase(Locale.getDefault());
+            next.write(converted, 0, converted.length());
+            buffer.delete(0, cut);
+        }
+    }
+
+    /**
+     * Splits the text in lines and passes them to {@link #onLine(String)}. The line break is '\n', or '\r\n' if the first line ends with it.
+     * The emitted lines are joined with that line break, and the text keeps its trailing line break (if any)
+     */
+    private abstract static class LineStage implements Stage {
+        private final Stage next;
+        private final StringBuilder line = new StringBuilder(); // current, incomplete
+        private String separator = null; // line break, once found
+        private boolean lineEnded = false; // true if the last char was a line break
+        private boolean emitted = false; // true once a line was emitted
+
+        LineStage(Stage next) {
+            this.next = next;
+        }
+
+        /** A line of the text (without its line break) */
+        abstract void onLine(String line);
+
+        /** All the lines were passed */
+        void onEnd() {
+        }
+
+        /** Outputs a line */
+        void emit(String text) {
+            if (emitted) next.write(separator, 0, separator.length());
+            next.write(text, 0, text.length());
+            emitted = true;
+        }
+
+        @Override
+        public void write(CharSequence text, int start, int end) {
+            var lineStart = start;
+            for (var i = start; i < end; i++) {
+                if (text.charAt(i) != '\n') continue;
+                line.append(text, lineStart, i);
+                var crlf = line.length() > 0 && line.charAt(line.length() - 1) == '\r';
+                if (separator == null) separator = crlf ? "\r\n" : "\n";
+                if (crlf && separator.length() == 2) line.setLength(line.length() - 1);
+                onLine(line.toString());
+                line.setLength(0);
+                lineStart = i + 1;
+            }
+            line.append(text, lineStart, end);
+            if (end > start) lineEnded = lineStart == end;
+        }
+
+        @Override
+        public void end() {
+            if (separator == null) separator = "\n";
+            if (line.length() > 0) onLine(line.toString());
+            line.setLength(0);
+            onEnd();
+            if (lineEnded && emitted) next.write(separator, 0, separator.length());
+            next.end();
+        }
+    }
+
+    /**
+     * Sorts the lines (case insensitive, then case sensitive for ties)
+     */
+    private static class SortStage extends LineStage {
+        private final List<String> lines = new ArrayList<>();
+
+        SortStage(Stage next) {
+            super(next);
+        }
+
+        @Override
+        void onLine(String line) {
+            lines.add(line);
+        }
+
+        @Override
+        void onEnd() {
+            Collections.sort(lines, (a, b) -> {
+                var compare = a.compareToIgnoreCase(b);
+                return compare != 0 ? compare : a.compareTo(b);
+            });
+            for (var line : lines) emit(line);
+        }
+    }
+
+    /**
+     * Encodes the UTF-8 bytes of the text as base64 (standard alphabet, padded, without line breaks)
+     */
+    private static class Base64EncodeStage extends BufferedStage {
+        private final Utf8Encoder encoder = new Utf8Encoder(this::put);
+        private int group = 0; // pending bytes
+        private int count = 0; // of pending bytes
+
+        Base64EncodeStage(Stage next) {
+            super(next);
+        }
+
+        private void put(int b) {
+            group = group << 8 | b;
+            if (++count < 3) return;
+            out.append(BASE64.charAt(group >> 18 & 63)).append(BASE64.charAt(group >> 12 & 63))
+                    .append(BASE64.charAt(group >> 6 & 63)).append(BASE64.charAt(group & 63));
+            group = 0;
+            count = 0;
+        }
+
+        @Override
+        public void write(CharSequence text, int start, int end) {
+            for (var i = start; i < end; i++) encoder.put(text.charAt(i));
+            flush();
+        }
+
+        @Override
+        public void end() {
+            encoder.end();
+            if (count == 1) {
+                out.append(BASE64.charAt(group >> 2 & 63)).append(BASE64.charAt(group << 4 & 63)).append("==");
+            } else if (count == 2) {
+                out.append(BASE64.charAt(group >> 10 & 63)).append(BASE64.charAt(group >> 4 & 63)).append(BASE64.charAt(group << 2 & 63)).append('=');
+            }
+            flush();
+            next.end();
+        }
+    }
+
+    /**
+     * Decodes base64 (standard or url-safe alphabet, whitespace ignored, padding optional) as UTF-8 text
+     */
+    private static class Base64DecodeStage extends BufferedStage {
+        private final Utf8Decoder decoder = new Utf8Decoder(out);
+        private int group = 0; // pending 6-bit values
+        private int count = 0; // of pending values
+        private boolean padded = false; // true once a '=' was found, only more of them can follow
+
+        Base64DecodeStage(Stage next) {
+            super(next);
+        }
+
+        @Override
+        public void write(CharSequence text, int start, int end) {
+            for (var i = start; i < end; i++) {
+                var c = text.charAt(i);
+                if (Character.isWhitespace(c)) continue;
+                if (c == '=') {
+                    padded = true;
+                    continue;
+                }
+                var value = c == '-' ? 62 : c == '_' ? 63 : BASE64.indexOf(c);
+                if (value == -1 || padded) throw new IllegalArgumentException("Invalid base64 character '" + c + "'");
+
+                group = group << 6 | value;
+                if (++count < 4) continue;
+                decoder.put(group >> 16 & 0xFF);
+                decoder.put(group >> 8 & 0xFF);
+                decoder.put(group & 0xFF);
+                group = 0;
+                count = 0;
+            }
+            flush();
+        }
+
+        @Override
+        public void end() {
+            if (count == 1) throw new IllegalArgumentException("Invalid base64 length");
+            if (count == 2) {
+                decoder.put(group >> 4 & 0xFF);
+            } else if (count == 3) {
+                decoder.put(group >> 10 & 0xFF);
+                decoder.put(group >> 2 & 0xFF);
+            }
+            decoder.end();
+            flush();
+            next.end();
+        }
+    }
+
+    /**
+     * Encodes the text for urls (same as URLEncoder with UTF-8: space as '+', reserved chars and non-ascii bytes as %XX)
+     */
+    private static class UrlEncodeStage extends BufferedStage {
+        private final Utf8Encoder encoder = new Utf8Encoder(this::put);
+
+        UrlEncodeStage(Stage next) {
+            super(next);
+        }
+
+        private void put(int b) {
+            if (b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b >= '0' && b <= '9' || b == '.' || b == '-' || b == '*' || b == '_') {
+                out.append((char) b);
+            } else if (b == ' ') {
+                out.append('+');
+            } else {
+                out.append('%').append(HEX.charAt(b >> 4)).append(HEX.charAt(b & 0xF));
+            }
+        }
+
+        @Override
+        public void write(CharSequence text, int start, int end) {
+            for (var i = start; i < end; i++) encoder.put(text.charAt(i));
+            flush();
+        }
+
+        @Override
+        public void end() {
+            encoder.end();
+            flush();
+            next.end();
+        }
+    }
+
+    /**
+     * Decodes url encoded text (same as URLDecoder with UTF-8)
+     */
+    private static class UrlDecodeStage extends BufferedStage {
+        private final Utf8Decoder decoder = new Utf8Decoder(out);
+        private final Utf8Encoder encoder = new Utf8Encoder(decoder::put); // for the literal chars
+        private int escape = -1; // hex digits read of the current %XX escape, -1 if not in one
+        private int value = 0; // of the escape
+
+        UrlDecodeStage(Stage next) {
+            super(next);
+        }
+
+        @Override
+        public void write(CharSequence text, int start, int end) {
+            for (var i = start; i < end; i++) {
+                var c = text.charAt(i);
+                if (escape != -1) {
+                    var digit = Character.digit(c, 16);
+                    if (digit == -1) throw new IllegalArgumentException("Invalid escape '%" + c + "'");
+                    value = value << 4 | digit;
+                    if (++escape == 2) {
+                        decoder.put(value);
+                        escape = -1;
+                    }
+                } else if (c == '%') {
+                    escape = 0;
+                    value = 0;
+                } else {
+                    encoder.put(c == '+' ? ' ' : c);
+                }
+            }
+            flush();
+        }
+
+        @Override
+        public void end() {
+            if (escape != -1) throw new IllegalArgumentException("Incomplete escape at the end");
+            encoder.end();
+            decoder.end();
+            flush();
+            next.end();
+        }
+    }
+
+    // ------------------- utf-8 -------------------
+
+    private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    private static final String HEX = "0123456789ABCDEF";
+
+    /** Receives bytes (0-255) */
+    private interface ByteSink {
+        void put(int b);
+    }
+
+    /**
+     * Encodes chars as UTF-8, one by one (surrogate pairs may be split between calls). Unpaired surrogates are encoded as '?', like {@link String#getBytes}
+     */
+    private static class Utf8Encoder {
+        private final ByteSink sink;
+        private char high = 0; // pending high surrogate, 0 if none
+
+        Utf8Encoder(ByteSink sink) {
+            this.sink = sink;
+        }
+
+        void put(char c) {
+            if (high != 0) {
+                var pending = high;
+                high = 0;
+                if (Character.isLowSurrogate(c)) {
+                    var codePoint = Character.toCodePoint(pending, c);
+                    sink.put(0xF0 | codePoint >> 18);
+                    sink.put(0x80 | codePoint >> 12 & 0x3F);
+                    sink.put(0x80 | codePoint >> 6 & 0x3F);
+                    sink.put(0x80 | codePoint & 0x3F);
+                    return;
+                }
+                sink.put('?');
+            }
+
+            if (c < 0x80) {
+                sink.put(c);
+            } else if (c < 0x800) {
+                sink.put(0xC0 | c >> 6);
+                sink.put(0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c)) {
+                high = c;
+            } else if (Character.isLowSurrogate(c)) {
+                sink.put('?');
+            } else {
+                sink.put(0xE0 | c >> 12);
+                sink.put(0x80 | c >> 6 & 0x3F);
+                sink.put(0x80 | c & 0x3F);
+            }
+        }
+
+        void end() {
+            if (high != 0) sink.put('?');
+            high = 0;
+        }
+    }
+
+    /**
+     * Decodes UTF-8 bytes, one by one (sequences may be split between calls). Invalid sequences are decoded as U+FFFD
+     */
+    private static class Utf8Decoder {
+        private final StringBuilder out;
+        private int codePoint = 0; // being decoded
+        private int needed = 0; // continuation bytes still needed
+        private int min = 0; // smallest valid code point for the sequence length (to reject overlong ones)
+
+        Utf8Decoder(StringBuilder out) {
+            this.out = out;
+        }
+
+        void put(int b) {
+            if (needed > 0) {
+                if ((b & 0xC0) == 0x80) {
+                    codePoint = codePoint << 6 | b & 0x3F;
+                    if (--needed == 0) {
+                        if (codePoint < min || codePoint > Character.MAX_CODE_POINT || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+                            out.append('\uFFFD');
+                        } else {
+                            out.appendCodePoint(codePoint);
+                        }
+                    }
+                    return;
+                }
+                // truncated sequence, then this byte starts a new one
+                out.append('\uFFFD');
+                needed = 0;
+            }
+
+            if (b < 0x80) {
+                out.append((char) b);
+            } else if (b >= 0xC2 && b < 0xE0) {
+                start(b & 0x1F, 1, 0x80);
+            } else if (b >= 0xE0 && b < 0xF0) {
+                start(b & 0x0F, 2, 0x800);
+            } else if (b >= 0xF0 && b < 0xF5) {
+                start(b & 0x07, 3, 0x10000);
+            } else {
+                out.append('\uFFFD');
+            }
+        }
+
+        private void start(int bits, int needed, int min) {
+            codePoint = bits;
+            this.needed = needed;
+            this.min = min;
+        }
+
+        void end() {
+            if (needed > 0) out.append('\uFFFD');
+            needed = 0;
+        }
+    }
+}
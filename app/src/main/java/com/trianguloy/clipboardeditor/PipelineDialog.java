@@ -0,0 +1,210 @@
+package com.trianguloy.clipboardeditor;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Dialogs to choose a saved pipeline (or build a new one) and apply it to a text (see {@link Pipeline}).
+ * Long texts are transformed in a background thread, while a cancelable dialog is shown.
+ * All public methods must be called from the main thread.
+ */
+public class PipelineDialog {
+    private static final int SYNC_MAX_LENGTH = 100_000; // texts longer than this are transformed in background
+
+    /** Receives the transformed text, in the main thread */
+    public interface Callback {
+        /** @param text the transformed text, null if cancelled or if it failed */
+        void onResult(String text);
+    }
+
+    /** Result of applying a pipeline */
+    private record Outcome(String text, String error) {
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private Future<?> current = null; // the pending transformation, if any
+    private int generation = 0; // increased on each transformation/cancel, to discard superseded results
+
+    /**
+     * Shows the saved pipelines to choose one (long click to delete it), or the builder if there are none
+     */
+    public void show(Activity activity, String text, Callback callback) {
+        var saved = Pipelines.getAll(activity);
+        if (saved.isEmpty()) {
+            showBuilder(activity, text, callback);
+            return;
+        }
+
+        var labels = new String[saved.size() + 1];
+        for (var i = 0; i < saved.size(); i++) {
+            labels[i] = saved.get(i).getName() + ": " + describe(activity, saved.get(i).getOperators());
+        }
+        labels[saved.size()] = activity.getString(R.string.pipeline_new);
+
+        var dialog = new AlertDialog.Builder(activity)
+                .setTitle(R.string.title_pipelines)
+                .setItems(labels, (d, which) -> {
+                    if (which == saved.size()) showBuilder(activity, text, callback);
+                    else run(activity, saved.get(which), text, callback);
+                })
+                .setOnCancelListener(d -> callback.onResult(null))
+                .show();
+        dialog.getListView().setOnItemLongClickListener((parent, view, position, id) -> {
+            if (position == saved.size()) return false;
+            Pipelines.delete(activity, saved.get(position).getName());
+            Toast.makeText(activity, R.string.toast_pipeline_deleted, Toast.LENGTH_SHORT).show();
+            // show again, without it
+            dialog.setOnCancelListener(null);
+            dialog.dismiss();
+            show(activity, text, callback);
+            return true;
+        });
+    }
+
+    /**
+     * Cancels the current transformation (if any), its result will not be delivered
+     */
+    public void cancel() {
+        generation++;
+        if (current != null) {
+            current.cancel(true);
+            current = null;
+        }
+    }
+
+    /**
+     * Cancels everything and stops the background thread
+     */
+    public void destroy() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    // ------------------- internal -------------------
+
+    /**
+     * Shows the dialog to build a pipeline by tapping its operators, then applies it (and saves it, if named)
+     */
+    private void showBuilder(Activity activity, String text, Callback callback) {
+        var content = activity.getLayoutInflater().inflate(R.layout.pipeline, null);
+        var steps = content.<TextView>findViewById(R.id.pipeline_steps);
+        var name = content.<EditText>findViewById(R.id.pipeline_name);
+        var list = content.<ListView>findViewById(R.id.list);
+
+        var operators = new ArrayList<Pipeline.Operator>();
+        Runnable updateSteps = () -> steps.setText(operators.isEmpty() ? activity.getString(R.string.txt_pipeline_empty) : describe(activity, operators));
+        list.setAdapter(new ArrayAdapter<>(activity, android.R.layout.simple_list_item_1, activity.getResources().getStringArray(R.array.pipeline_operators)));
+        list.setOnItemClickListener((parent, view, position, id) -> {
+            operators.add(Pipeline.Operator.values()[position]);
+            updateSteps.run();
+        });
+        content.findViewById(R.id.pipeline_remove).setOnClickListener(v -> {
+            if (!operators.isEmpty()) operators.remove(operators.size() - 1);
+            updateSteps.run();
+        });
+        updateSteps.run();
+
+        new AlertDialog.Builder(activity)
+                .setTitle(R.string.pipeline_new)
+                .setView(content)
+                .setPositiveButton(R.string.btn_apply, (d, which) -> {
+                    var pipeline = new Pipeline(name.getText().toString(), operators);
+                    if (!pipeline.getName().isEmpty() && !operators.isEmpty()) {
+                        Pipelines.save(activity, pipeline);
+                        Toast.makeText(activity, R.string.toast_pipeline_saved, Toast.LENGTH_SHORT).show();
+                    }
+                    run(activity, pipeline, text, callback);
+                })
+                .setNegativeButton(android.R.string.cancel, (d, which) -> callback.onResult(null))
+                .setOnCancelListener(d -> callback.onResult(null))
+                .show();
+    }
+
+    /**
+     * Applies the pipeline to the text, directly if short, in background otherwise
+     */
+    private void run(Activity activity, Pipeline pipeline, String text, Callback callback) {
+        if (text.length() <= SYNC_MAX_LENGTH) {
+            deliver(activity, apply(pipeline, text), callback);
+            return;
+        }
+
+        cancel();
+        var id = generation;
+        var progress = new AlertDialog.Builder(activity)
+                .setMessage(R.string.txt_transforming)
+                .setNegativeButton(android.R.string.cancel, (d, which) -> {
+                    cancel();
+                    callback.onResult(null);
+                })
+                .setOnCancelListener(d -> {
+                    cancel();
+                    callback.onResult(null);
+                })
+                .show();
+        current = executor.submit(() -> {
+            Outcome outcome;
+            try {
+                outcome = apply(pipeline, text);
+            } catch (CancellationException e) {
+                return;
+            }
+            handler.post(() -> {
+                if (id != generation) return; // superseded
+                current = null;
+                progress.setOnCancelListener(null);
+                progress.dismiss();
+                deliver(activity, outcome, callback);
+            });
+        });
+    }
+
+    /**
+     * @return the outcome of applying the pipeline (any thread)
+     */
+    private static Outcome apply(Pipeline pipeline, String text) {
+        try {
+            return new Outcome(pipeline.apply(text), null);
+        } catch (IllegalArgumentException e) {
+            return new Outcome(null, e.getMessage());
+        }
+    }
+
+    /**
+     * Passes the outcome to the callback, showing the error (if any)
+     */
+    private static void deliver(Context context, Outcome outcome, Callback callback) {
+        if (outcome.error() != null) Toast.makeText(context, context.getString(R.string.toast_pipeline_error, outcome.error()), Toast.LENGTH_LONG).show();
+        callback.onResult(outcome.text());
+    }
+
+    /**
+     * @return the operators, readable
+     */
+    private static String describe(Context context, List<Pipeline.Operator> operators) {
+        var labels = context.getResources().getStringArray(R.array.pipeline_operators);
+        var description = new StringBuilder();
+        for (var operator : operators) {
+            if (description.length() > 0) description.append(" \u2192 ");
+            description.append(labels[operator.ordinal()]);
+        }
+        return description.toString();
+    }
+}
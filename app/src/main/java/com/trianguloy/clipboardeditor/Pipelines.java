@@ -0,0 +1,69 @@
+package com.trianguloy.clipboardeditor;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The saved pipelines (see {@link Pipeline}), shared by the editor and the text selection action.
+ */
+public class Pipelines {
+    private static final String PREFS = "pipelines";
+    private static final String SAVED = "saved"; // one serialized pipeline per line
+
+    /**
+     * @return the saved pipelines, in the order they were saved
+     */
+    public static List<Pipeline> getAll(Context context) {
+        var pipelines = new ArrayList<Pipeline>();
+        for (var line : getPrefs(context).getString(SAVED, "").split("\n")) {
+            var pipeline = Pipeline.parse(line);
+            if (pipeline != null) pipelines.add(pipeline);
+        }
+        return pipelines;
+    }
+
+    /**
+     * Saves the pipeline, replacing the one with the same name (if any)
+     */
+    public static void save(Context context, Pipeline pipeline) {
+        var pipelines = getAll(context);
+        var replaced = false;
+        for (var i = 0; i < pipelines.size(); i++) {
+            if (pipelines.get(i).getName().equals(pipeline.getName())) {
+                pipelines.set(i, pipeline);
+                replaced = true;
+            }
+        }
+        if (!replaced) pipelines.add(pipeline);
+        store(context, pipelines);
+    }
+
+    /**
+     * Removes the pipeline with that name (if any)
+     */
+    public static void delete(Context context, String name) {
+        var pipelines = getAll(context);
+        for (var i = pipelines.size() - 1; i >= 0; i--) {
+            if (pipelines.get(i).getName().equals(name)) pipelines.remove(i);
+        }
+        store(context, pipelines);
+    }
+
+    // ------------------- utils -------------------
+
+    private static void store(Context context, List<Pipeline> pipelines) {
+        var saved = new StringBuilder();
+        for (var pipeline : pipelines) {
+            if (saved.length() > 0) saved.append('\n');
+            saved.append(pipeline.serialize());
+        }
+        getPrefs(context).edit().putString(SAVED, saved.toString()).apply();
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
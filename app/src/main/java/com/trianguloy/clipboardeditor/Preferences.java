@@ -7,9 +7,15 @@ import static com.trianguloy.clipboardeditor.Preferences.Pref.SYNC_START;
 
 import android.content.SharedPreferences;
 
-/** Simple Preferences wrapper */
+/**
+ * Simple Preferences wrapper.
+ * Values are read from an in-memory snapshot (kept updated by a listener) so reading them is cheap, and can be done from any thread.
+ */
 public class Preferences {
     private final SharedPreferences prefs; // the prefs
+    private final SharedPreferences.OnSharedPreferenceChangeListener listener = (p, key) -> reload(); // kept here, prefs only keeps a weak reference
+    private volatile Snapshot snapshot; // current values
+    private SharedPreferences.Editor batch = null; // pending changes, if batching
 
     /** @param prefs preferences to wrap */
     public Preferences(SharedPreferences prefs) {
@@ -17,16 +23,20 @@ public class Preferences {
 
         // migrations
         if (prefs.contains("sync")) {
+            var editor = prefs.edit();
             if (!prefs.getBoolean("sync", true)) {
                 // sync = false -> toggle appropriate
-                set(SYNC_START, false);
-                set(SYNC_BTN_IC, true);
-                set(SYNC_EXTERNAL, false);
-                set(SYNC_BTN_IC, true);
-                set(SYNC_PAUSE, false);
+                editor.putBoolean(SYNC_START.key, false);
+                editor.putBoolean(SYNC_BTN_IC.key, true);
+                editor.putBoolean(SYNC_EXTERNAL.key, false);
+                editor.putBoolean(SYNC_BTN_IC.key, true);
+                editor.putBoolean(SYNC_PAUSE.key, false);
             }
-            prefs.edit().remove("sync").apply();
+            editor.remove("sync").apply();
         }
+
+        reload();
+        prefs.registerOnSharedPreferenceChangeListener(listener);
     }
 
     public enum Pref {
@@ -39,23 +49,128 @@ public class Preferences {
         SYNC_INPUT("syncInput", false),
         SYNC_BTN_IC("syncBtnIC", false),
         SYNC_PAUSE("syncPause", true),
+        SYNC_INPUT_DELAY("syncInputDelay", 300, 0, 60_000), // ms
+        LARGE_THRESHOLD("largeThreshold", 1_000_000, 100_000, Integer.MAX_VALUE), // chars (bigger than the large mode window)
+        HISTORY("history", false),
+        HISTORY_MAX_COUNT("historyMaxCount", 1000, 1, 100_000),
+        HISTORY_MAX_KB("historyMaxKb", 10 * 1024, 1, 1024 * 1024),
+        PROCESS_ACTIONS("processActions", false),
+        UNDO_MAX_KB("undoMaxKb", 1024, 0, 1024 * 1024),
+        METRICS("metrics", false),
+        CHECKSUMS("checksums", false),
+        SENSITIVE_CLEAR_DELAY("sensitiveClearDelay", 60, 0, 24 * 60 * 60), // seconds, 0 to never clear
         ;
 
         private final String key;
-        private final boolean defaultValue;
+        private final Object defaultValue; // Boolean or Integer
+        private final int min; // valid range of integer preferences
+        private final int max;
 
         Pref(String key, boolean defaultValue) {
             this.key = key;
             this.defaultValue = defaultValue;
+            min = max = 0;
+        }
+
+        Pref(String key, int defaultValue, int min, int max) {
+            this.key = key;
+            this.defaultValue = defaultValue;
+            this.min = min;
+            this.max = max;
+        }
+
+        /** For integer preferences: the minimum valid value */
+        public int getMin() {
+            return min;
+        }
+
+        /** For integer preferences: the maximum valid value */
+        public int getMax() {
+            return max;
+        }
+
+        /** @return the value clamped to the valid range */
+        private int clamp(int value) {
+            return Math.max(min, Math.min(value, max));
         }
     }
 
+    /**
+     * Immutable values of all preferences
+     *
+     * @param booleans bit i is the value of the boolean preference with ordinal i
+     * @param integers item i is the value of the integer preference with ordinal i
+     */
+    private record Snapshot(long booleans, int[] integers) {
+    }
+
+    /** For boolean preferences */
     public boolean is(Pref pref) {
-        return prefs.getBoolean(pref.key, pref.defaultValue);
+        return (snapshot.booleans() >>> pref.ordinal() & 1) != 0;
     }
 
+    /** For boolean preferences */
     public void set(Pref pref, boolean value) {
-        prefs.edit().putBoolean(pref.key, value).apply();
+        var current = snapshot;
+        var bit = 1L << pref.ordinal();
+        snapshot = new Snapshot(value ? current.booleans() | bit : current.booleans() & ~bit, current.integers());
+        if (batch != null) batch.putBoolean(pref.key, value);
+        else prefs.edit().putBoolean(pref.key, value).apply();
+    }
+
+    /** For integer preferences */
+    public int get(Pref pref) {
+        return snapshot.integers()[pref.ordinal()];
+    }
+
+    /** For integer preferences, the value is clamped to its valid range */
+    public void set(Pref pref, int value) {
+        value = pref.clamp(value);
+        var current = snapshot;
+        var integers = current.integers().clone();
+        integers[pref.ordinal()] = value;
+        snapshot = new Snapshot(current.booleans(), integers);
+        if (batch != null) batch.putInt(pref.key, value);
+        else prefs.edit().putInt(pref.key, value).apply();
+    }
+
+    // ------------------- batch -------------------
+
+    /**
+     * From now on, changes are kept in memory (and returned by the getters) but not saved until {@link #endBatch()}
+     */
+    public void beginBatch() {
+        if (batch == null) batch = prefs.edit();
+    }
+
+    /**
+     * Saves all changes since {@link #beginBatch()} at once
+     */
+    public void endBatch() {
+        if (batch == null) return;
+        var editor = batch;
+        batch = null;
+        editor.apply();
+    }
+
+    // ------------------- utils -------------------
+
+    /**
+     * Reads all values into a new snapshot (unless batching, the in-memory values are the newest ones then)
+     */
+    private void reload() {
+        if (batch != null) return;
+
+        var booleans = 0L;
+        var integers = new int[Pref.values().length];
+        for (var pref : Pref.values()) {
+            if (pref.defaultValue instanceof Boolean defaultValue) {
+                if (prefs.getBoolean(pref.key, defaultValue)) booleans |= 1L << pref.ordinal();
+            } else {
+                integers[pref.ordinal()] = pref.clamp(prefs.getInt(pref.key, (Integer) pref.defaultValue));
+            }
+        }
+        snapshot = new Snapshot(booleans, integers);
     }
 
 }
@@ -4,29 +4,66 @@ import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.ClipData;
 import android.content.Intent;
+import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.util.Log;
+import android.widget.Toast;
+
+import java.io.IOException;
 
 /**
  * This activity receives the PROCESS_TEXT intent and calls the main activity with it.
  * Separated to allow having a different label, and also because this feature is for Android 6.0+ only
+ * <p>
+ * If launched from an alias with a 'transform' meta-data (quick actions), that transformation is applied directly instead, without opening the main activity.
+ * If launched from the alias with the 'pipeline' meta-data, the saved pipelines are offered instead (see {@link PipelineDialog}).
  */
 @TargetApi(Build.VERSION_CODES.M)
 public class Process extends Activity {
+    public static final String META_TRANSFORM = "transform"; // name of a Transform
+    public static final String META_PIPELINE = "pipeline"; // true to choose a pipeline
+
+    private final PipelineDialog pipelineDialog = new PipelineDialog();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
         // get the text
-        var clipData = ClipData.newPlainText(
-                getString(R.string.clip_selection),
-                getIntent().getCharSequenceExtra(Intent.EXTRA_PROCESS_TEXT)
-        );
+        var text = getIntent().getCharSequenceExtra(Intent.EXTRA_PROCESS_TEXT);
+
+        // quick action
+        var metaData = getMetaData();
+        var transform = metaData == null ? null : Transform.find(metaData.getString(META_TRANSFORM));
+        if (transform != null) {
+            returnResult(transform.apply(text == null ? "" : text.toString()));
+            return;
+        }
+
+        // pipeline
+        if (metaData != null && metaData.getBoolean(META_PIPELINE)) {
+            pipelineDialog.show(this, text == null ? "" : text.toString(), result -> {
+                if (result != null) {
+                    returnResult(result);
+                } else {
+                    setResult(RESULT_CANCELED);
+                    finish();
+                }
+            });
+            return;
+        }
 
         // process the text
+        var clipData = ClipData.newPlainText(getString(R.string.clip_selection), text);
         var intent = new Intent(this, Editor.class);
-        intent.putExtra(getPackageName(), clipData);
+        try {
+            ClipTransport.put(this, intent, clipData, text == null ? "" : text.toString(), true);
+        } catch (IOException e) {
+            // can't be spilled, try inline
+            Log.e("PROCESS", "Unable to cache the selection", e);
+            intent.putExtra(getPackageName(), clipData);
+        }
         startActivityForResult(intent, 0);
     }
 
@@ -34,14 +71,45 @@ public class Process extends Activity {
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
 
-        // get the result
-        var clipData = data == null ? null : data.<ClipData>getParcelableExtra(getPackageName());
+        // get the result (big ones are read from the cache)
+        var clipData = data == null ? null : ClipTransport.read(this, data);
+        if (clipData == null && data != null && ClipTransport.getKey(data) != null) {
+            // the big result is lost, keep the selection
+            Toast.makeText(this, R.string.toast_clip_missing, Toast.LENGTH_LONG).show();
+            setResult(RESULT_CANCELED);
+            finish();
+            return;
+        }
         var result = clipData == null ? "" : clipData.getItemAt(0).coerceToText(this);
 
+        returnResult(result);
+    }
+
+    /**
+     * Returns the text to the caller and exits
+     */
+    private void returnResult(CharSequence result) {
         // return it (we ignore the readonly attribute, it's unnecessary)
         var intent = new Intent();
         intent.putExtra(Intent.EXTRA_PROCESS_TEXT, result);
         setResult(RESULT_OK, intent);
         finish();
     }
+
+    @Override
+    protected void onDestroy() {
+        pipelineDialog.destroy();
+        super.onDestroy();
+    }
+
+    /**
+     * @return the meta-data of the alias used to launch this activity, null if none
+     */
+    private Bundle getMetaData() {
+        try {
+            return getPackageManager().getActivityInfo(getComponentName(), PackageManager.GET_META_DATA).metaData;
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+    }
 }
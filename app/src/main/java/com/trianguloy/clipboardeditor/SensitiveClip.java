@@ -0,0 +1,156 @@
+package com.trianguloy.clipboardeditor;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.ClipData;
+import android.content.ClipDescription;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PersistableBundle;
+import android.os.SystemClock;
+import android.text.Editable;
+import android.widget.Toast;
+
+import java.nio.CharBuffer;
+
+/**
+ * Sensitive clips (passwords, codes...): detection, marking, wiping, and the automatic clear of the clipboard.
+ * The clear is scheduled both in the process (exact, while it lives) and as an alarm (in case it doesn't), the first one to run cancels the other.
+ * It is only skipped if the clipboard can be read and it is not the sensitive clip anymore (since Android 10 it can't be read from background, so it is cleared blindly then).
+ */
+public class SensitiveClip extends BroadcastReceiver {
+    private static final String PREFS = "sensitive";
+    private static final String TIMESTAMP = "timestamp"; // of the clip to clear (Android O+ only, 0 if unknown), missing if no clear is scheduled
+    private static final int REQUEST_CLEAR = 0;
+
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+    private static Runnable pending = null; // the in-process clear, if scheduled
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        clear(context);
+    }
+
+    // ------------------- clip -------------------
+
+    /**
+     * @return true if the clip was marked as sensitive (by us or by the app that copied it)
+     */
+    public static boolean isSensitive(ClipDescription description) {
+        if (description == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.N) return false;
+        var extras = description.getExtras();
+        return extras != null && extras.getBoolean(ClipDescription.EXTRA_IS_SENSITIVE);
+    }
+
+    /**
+     * Marks the clip as sensitive, so the system (and well-behaved apps) don't show nor keep its content (Android N+, the flag is honored from Android 13)
+     */
+    public static void mark(ClipData clip) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) return;
+        var extras = new PersistableBundle();
+        extras.putBoolean(ClipDescription.EXTRA_IS_SENSITIVE, true);
+        clip.getDescription().setExtras(extras);
+    }
+
+    /**
+     * @return the description timestamp (Android O+), 0 if unknown
+     */
+    public static long getTimestamp(ClipDescription description) {
+        return description != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ? description.getTimestamp() : 0;
+    }
+
+    /**
+     * Overwrites the editable chars with zeros before emptying it, so the previous text doesn't remain in its buffer
+     */
+    public static void wipe(Editable editable) {
+        var length = editable.length();
+        if (length == 0) return;
+        // same length replacement, copied in place
+        editable.replace(0, length, CharBuffer.wrap(new char[length]));
+        editable.clear();
+    }
+
+    // ------------------- auto clear -------------------
+
+    /**
+     * Clears the clipboard after the delay (replacing a previous schedule, if any)
+     *
+     * @param seconds   delay, 0 or negative to not clear
+     * @param timestamp of the sensitive clip in the clipboard (its description one), 0 if unknown
+     */
+    public static void scheduleClear(Context context, int seconds, long timestamp) {
+        cancelClear(context);
+        if (seconds <= 0) return;
+        var appContext = context.getApplicationContext();
+        getPrefs(appContext).edit().putLong(TIMESTAMP, timestamp).apply();
+
+        // in process
+        pending = () -> clear(appContext);
+        handler.postDelayed(pending, seconds * 1000L);
+
+        // as an alarm (inexact, exact ones need a permission)
+        var alarms = (AlarmManager) appContext.getSystemService(Context.ALARM_SERVICE);
+        var at = SystemClock.elapsedRealtime() + seconds * 1000L;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            alarms.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, at, getPendingIntent(appContext));
+        } else {
+            alarms.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, at, getPendingIntent(appContext));
+        }
+    }
+
+    /**
+     * The sensitive clip was replaced by another sensitive one (a transformation of it): the scheduled clear, if any, is now for that one
+     *
+     * @param timestamp of the new clip, 0 if unknown
+     */
+    public static void updateClear(Context context, long timestamp) {
+        var prefs = getPrefs(context);
+        if (prefs.contains(TIMESTAMP)) prefs.edit().putLong(TIMESTAMP, timestamp).apply();
+    }
+
+    /**
+     * Cancels the scheduled clear, if any
+     */
+    public static void cancelClear(Context context) {
+        if (pending != null) {
+            handler.removeCallbacks(pending);
+            pending = null;
+        }
+        var appContext = context.getApplicationContext();
+        getPrefs(appContext).edit().remove(TIMESTAMP).apply();
+        ((AlarmManager) appContext.getSystemService(Context.ALARM_SERVICE)).cancel(getPendingIntent(appContext));
+    }
+
+    /**
+     * Clears the clipboard now (same as the clear shortcut), unless it is known to contain another clip
+     */
+    private static void clear(Context context) {
+        var timestamp = getPrefs(context).getLong(TIMESTAMP, 0);
+        cancelClear(context);
+
+        if (timestamp != 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            // null if empty or if it can't be read
+            var description = ((ClipboardManager) context.getSystemService(Context.CLIPBOARD_SERVICE)).getPrimaryClipDescription();
+            if (description != null && description.getTimestamp() != timestamp) return;
+        }
+
+        Shortcuts.clear(context);
+        Toast.makeText(context, R.string.toast_sensitive_cleared, Toast.LENGTH_SHORT).show();
+    }
+
+    // ------------------- utils -------------------
+
+    private static PendingIntent getPendingIntent(Context context) {
+        return PendingIntent.getBroadcast(context, REQUEST_CLEAR, new Intent(context, SensitiveClip.class), PendingIntent.FLAG_UPDATE_CURRENT | (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0));
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
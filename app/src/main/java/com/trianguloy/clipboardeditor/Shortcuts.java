@@ -1,33 +1,116 @@
 package com.trianguloy.clipboardeditor;
 
 import android.app.Activity;
+import android.app.PendingIntent;
 import android.content.ClipData;
 import android.content.ClipboardManager;
+import android.content.Context;
+import android.content.Intent;
 import android.os.Build;
 import android.os.Bundle;
 import android.widget.Toast;
 
 /**
- * Activity that will clear the clipboard when launched, then exit
+ * Activity that will clear the clipboard when launched, then exit.
+ * If launched with a {@link #EXTRA_TRANSFORM} it applies that transformation to the clipboard text instead,
+ * and with {@link #EXTRA_NOTIFY} it shows the clipboard text as a notification.
+ * Used by the app shortcuts, the quick settings tile and the widget (it is lightweight, the editor is never inflated).
  */
 public class Shortcuts extends Activity {
+    public static final String EXTRA_TRANSFORM = "transform"; // name of a Transform
+    public static final String EXTRA_NOTIFY = "notify"; // true to notify
+
+    private ClipboardEngine engine;
+    private Transform transform; // to apply, null to clear
+    private boolean notify; // true to notify, instead of clear or transform
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
         // get
-        var clipboard = (ClipboardManager) getSystemService(CLIPBOARD_SERVICE);
-
-        // clear
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
-            // the easy way, just call 'clear'
-            clipboard.clearPrimaryClip();
-        } else {
-            // the not-so-easy way, manually set as empty
-            clipboard.setPrimaryClip(ClipData.newPlainText("", ""));
+        engine = new ClipboardEngine(new SystemClipboard(this));
+        transform = Transform.find(getIntent().getStringExtra(EXTRA_TRANSFORM));
+        notify = getIntent().getBooleanExtra(EXTRA_NOTIFY, false);
+
+        if (transform == null && !notify) {
+            // clear
+            clear(this);
+
+            Toast.makeText(this, R.string.toast_cleared, Toast.LENGTH_SHORT).show();
+            finish();
+        }
+        // else the clipboard can only be read once focused
+    }
+
+    @Override
+    public void onWindowFocusChanged(boolean hasFocus) {
+        super.onWindowFocusChanged(hasFocus);
+        if (!hasFocus || (transform == null && !notify) || isFinishing()) return;
+
+        if (notify) {
+            // notify
+            var clip = engine.read();
+            if (clip != null) ClipPreview.update(this, clip);
+
+            var notifications = new Notifications(this);
+            if (clip == null || clip.text().isEmpty()) {
+                Toast.makeText(this, R.string.toast_empty, Toast.LENGTH_SHORT).show();
+            } else if (clip.sensitive()) {
+                // a notification would show it
+                Toast.makeText(this, R.string.toast_sensitive_notification, Toast.LENGTH_SHORT).show();
+            } else if (!notifications.areEnabled()) {
+                // the permission can only be requested from the editor
+                Toast.makeText(this, R.string.toast_notifications_disabled, Toast.LENGTH_LONG).show();
+            } else {
+                notifications.show(ClipData.newPlainText(clip.label(), clip.text()), clip.text());
+                Toast.makeText(this, R.string.toast_notified, Toast.LENGTH_SHORT).show();
+            }
+            finish();
+            return;
         }
 
-        Toast.makeText(this, R.string.toast_cleared, Toast.LENGTH_SHORT).show();
+        // transform
+        var result = engine.transform(transform);
+        ClipPreview.update(this, result);
+        if (result != null && result.sensitive()) {
+            // the pending clear is for the replaced clip, move it to the new one
+            SensitiveClip.updateClear(this, SensitiveClip.getTimestamp(((ClipboardManager) getSystemService(CLIPBOARD_SERVICE)).getPrimaryClipDescription()));
+        }
+
+        Toast.makeText(this, result == null ? R.string.toast_empty : R.string.toast_transformed, Toast.LENGTH_SHORT).show();
         finish();
     }
+
+    /**
+     * Clears the clipboard (and its preview)
+     */
+    public static void clear(Context context) {
+        new ClipboardEngine(new SystemClipboard(context)).clear();
+        ClipPreview.update(context, (CharSequence) null);
+    }
+
+    // ------------------- intents -------------------
+
+    /**
+     * @param transform to apply, null to clear (or notify)
+     * @param notify    true to notify instead
+     * @return an intent to launch this activity from outside an activity (tile, widget)
+     */
+    public static Intent newIntent(Context context, Transform transform, boolean notify) {
+        var intent = new Intent(context, Shortcuts.class);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        if (transform != null) intent.putExtra(EXTRA_TRANSFORM, transform.name());
+        if (notify) intent.putExtra(EXTRA_NOTIFY, true);
+        return intent;
+    }
+
+    /**
+     * Same as {@link #newIntent(Context, Transform, boolean)}, as a pending intent
+     *
+     * @param requestCode different for each action, so they don't replace each other
+     */
+    public static PendingIntent newPendingIntent(Context context, int requestCode, Transform transform, boolean notify) {
+        return PendingIntent.getActivity(context, requestCode, newIntent(context, transform, notify), PendingIntent.FLAG_UPDATE_CURRENT | (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0));
+    }
 }
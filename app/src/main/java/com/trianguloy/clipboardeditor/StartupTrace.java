@@ -0,0 +1,39 @@
+package com.trianguloy.clipboardeditor;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+/**
+ * Startup instrumentation: splits the startup in consecutive phases.
+ * Each phase is a systrace section (Android 4.3+), and its duration is logged.
+ * Must be used from a single thread.
+ */
+public class StartupTrace {
+    private final long start = SystemClock.uptimeMillis(); // when this was created
+    private long last = start; // when the current phase started
+    private String phase = null; // current phase, if any
+
+    /**
+     * Ends the current phase (if any) and starts a new one
+     */
+    public void begin(String phase) {
+        end();
+        this.phase = phase;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) Trace.beginSection(phase);
+    }
+
+    /**
+     * Ends the current phase (if any)
+     */
+    public void end() {
+        if (phase == null) return;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) Trace.endSection();
+
+        var now = SystemClock.uptimeMillis();
+        Log.d("STARTUP", phase + ": " + (now - last) + "ms (total " + (now - start) + "ms)");
+        last = now;
+        phase = null;
+    }
+}
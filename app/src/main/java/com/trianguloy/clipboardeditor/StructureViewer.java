@@ -0,0 +1,290 @@
+package com.trianguloy.clipboardeditor;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.SparseArray;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Dialog that shows a JSON or CSV text as a list of collapsible nodes (see {@link StructuredText}).
+ * The text is parsed in a background thread, and only the visible rows are built (recycled by the list), so huge single-line texts are cheap to browse.
+ * JSON can also be reformatted or minified, in background too.
+ * All public methods must be called from the main thread.
+ */
+public class StructureViewer {
+    private static final int PREVIEW_CHARS = 200; // of each row
+    private static final int INDENT_DP = 16; // per depth level
+
+    /** Receives the reformatted text, in the main thread */
+    public interface Callback {
+        void onReformatted(String text);
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private Future<?> current = null; // the pending operation, if any
+    private int generation = 0; // increased on each operation/cancel, to discard superseded results
+
+    /**
+     * Shows the text in a dialog
+     *
+     * @param callback receives the reformatted text, if requested (the dialog is dismissed then)
+     */
+    public void show(Activity activity, StructuredText.Type type, String text, Callback callback) {
+        var content = activity.getLayoutInflater().inflate(R.layout.structure, null);
+        var status = content.<TextView>findViewById(R.id.structure_status);
+        var list = content.<ListView>findViewById(R.id.list);
+        var format = content.findViewById(R.id.structure_format);
+        var minify = content.findViewById(R.id.structure_minify);
+        format.setVisibility(type == StructuredText.Type.JSON ? View.VISIBLE : View.GONE);
+        minify.setVisibility(type == StructuredText.Type.JSON ? View.VISIBLE : View.GONE);
+        format.setEnabled(false);
+        minify.setEnabled(false);
+
+        var dialog = new AlertDialog.Builder(activity)
+                .setTitle(type.name())
+                .setView(content)
+                .show();
+        dialog.setOnDismissListener(d -> cancel());
+
+        // parse
+        status.setText(R.string.txt_parsing);
+        run(() -> {
+            try {
+                var structured = StructuredText.parse(text, type);
+                return () -> {
+                    status.setText(activity.getString(R.string.txt_nodes, structured.getCount()));
+                    var adapter = new Adapter(structured);
+                    list.setAdapter(adapter);
+                    list.setOnItemClickListener((parent, view, position, id) -> adapter.toggle(position));
+                    format.setEnabled(true);
+                    minify.setEnabled(true);
+                };
+            } catch (ParseException e) {
+                return () -> status.setText(activity.getString(R.string.txt_parse_error, e.getMessage(), e.getErrorOffset()));
+            }
+        });
+
+        // reformat
+        View.OnClickListener reformat = v -> {
+            var minified = v == minify;
+            format.setEnabled(false);
+            minify.setEnabled(false);
+            status.setText(R.string.txt_formatting);
+            run(() -> {
+                var result = StructuredText.formatJson(text, minified);
+                return () -> {
+                    dialog.setOnDismissListener(null);
+                    dialog.dismiss();
+                    callback.onReformatted(result);
+                };
+            });
+        };
+        format.setOnClickListener(reformat);
+        minify.setOnClickListener(reformat);
+    }
+
+    /**
+     * Cancels the current operation (if any), its result will not be delivered
+     */
+    public void cancel() {
+        generation++;
+        if (current != null) {
+            current.cancel(true);
+            current = null;
+        }
+    }
+
+    /**
+     * Cancels everything and stops the background thread
+     */
+    public void destroy() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    // ------------------- internal -------------------
+
+    /** Background work, returns what to run in the main thread */
+    private interface Task {
+        Runnable run();
+    }
+
+    /**
+     * Runs the task in background, then its result in the main thread (unless cancelled or superseded before)
+     */
+    private void run(Task task) {
+        cancel();
+        var id = generation;
+        current = executor.submit(() -> {
+            Runnable result;
+            try {
+                result = task.run();
+            } catch (CancellationException e) {
+                return;
+            }
+            handler.post(() -> {
+                if (id != generation) return; // superseded
+                current = null;
+                result.run();
+            });
+        });
+    }
+
+    /**
+     * The visible rows: the nodes not inside a collapsed one (and the cells of the expanded csv rows)
+     */
+    private static class Adapter extends BaseAdapter {
+        private final StructuredText structured;
+        private final boolean[] expanded;
+        private final SparseArray<String[]> cells = new SparseArray<>(); // of the expanded csv rows
+        private final String[] header; // csv only, the keys of the cells
+
+        private int count = 0;
+        private int[] nodes = new int[64]; // node of each row
+        private int[] cellIndexes = new int[64]; // cell of each row, -1 for the node itself
+
+        Adapter(StructuredText structured) {
+            this.structured = structured;
+            expanded = new boolean[structured.getCount()];
+            if (structured.getType() == StructuredText.Type.JSON) {
+                // the root is expanded
+                if (structured.getCount() > 0) expanded[0] = true;
+                header = null;
+            } else {
+                header = structured.getCount() > 0 ? structured.getCells(0) : new String[0];
+            }
+            rebuild();
+        }
+
+        /**
+         * Expands/collapses the node of the row
+         */
+        void toggle(int position) {
+            var node = nodes[position];
+            if (cellIndexes[position] != -1 || !structured.isExpandable(node)) return;
+            expanded[node] = !expanded[node];
+            if (structured.getType() == StructuredText.Type.CSV) {
+                if (expanded[node]) cells.put(node, structured.getCells(node));
+                else cells.remove(node);
+            }
+            rebuild();
+        }
+
+        /**
+         * Recomputes the visible rows, skipping the collapsed subtrees (so only visible nodes are visited)
+         */
+        private void rebuild() {
+            count = 0;
+            var node = 0;
+            while (node < structured.getCount()) {
+                append(node, -1);
+                if (!expanded[node]) {
+                    node = structured.getNext(node);
+                } else if (structured.getType() == StructuredText.Type.CSV) {
+                    var rowCells = cells.get(node);
+                    for (var cell = 0; cell < rowCells.length; cell++) append(node, cell);
+                    node++;
+                } else {
+                    node++;
+                }
+            }
+            notifyDataSetChanged();
+        }
+
+        private void append(int node, int cell) {
+            if (count == nodes.length) {
+                nodes = Arrays.copyOf(nodes, count * 2);
+                cellIndexes = Arrays.copyOf(cellIndexes, count * 2);
+            }
+            nodes[count] = node;
+            cellIndexes[count] = cell;
+            count++;
+        }
+
+        @Override
+        public int getCount() {
+            return count;
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return nodes[position];
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            TextView view;
+            if (convertView instanceof TextView textView) {
+                view = textView;
+            } else {
+                view = new TextView(parent.getContext());
+                view.setTypeface(Typeface.MONOSPACE);
+                view.setSingleLine(true);
+                view.setEllipsize(TextUtils.TruncateAt.END);
+            }
+
+            var node = nodes[position];
+            var cell = cellIndexes[position];
+            var density = parent.getResources().getDisplayMetrics().density;
+            var depth = cell == -1 ? structured.getDepth(node) : 1;
+            var padding = (int) (4 * density);
+            view.setPadding(padding + (int) (depth * INDENT_DP * density), padding, padding, padding);
+            view.setTextSize(TypedValue.COMPLEX_UNIT_SP, 14);
+            view.setText(cell == -1 ? getNodeText(node) : getCellText(node, cell));
+            return view;
+        }
+
+        /**
+         * @return the text of a node row
+         */
+        private String getNodeText(int node) {
+            var type = structured.getNodeType(node);
+            if (type == StructuredText.ROW) {
+                return (expanded[node] ? "\u25be " : "\u25b8 ") + "#" + node + " " + structured.getPreview(node, PREVIEW_CHARS).replace('\n', ' ').replace('\r', ' ');
+            }
+
+            var key = structured.getKey(node);
+            var text = key == null ? "" : "\"" + key + "\": ";
+            if (type == StructuredText.VALUE) return "  " + text + structured.getPreview(node, PREVIEW_CHARS);
+
+            var open = type == StructuredText.OBJECT ? "{" : "[";
+            var close = type == StructuredText.OBJECT ? "}" : "]";
+            var children = structured.getChildren(node);
+            if (children == 0) return "  " + text + open + close;
+            return expanded[node]
+                    ? "\u25be " + text + open + " " + children
+                    : "\u25b8 " + text + open + "\u2026" + close + " " + children;
+        }
+
+        /**
+         * @return the text of a csv cell row
+         */
+        private String getCellText(int node, int cell) {
+            var key = cell < header.length ? header[cell] : "#" + cell;
+            return key + ": " + cells.get(node)[cell];
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package com.trianguloy.clipboardeditor;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+/**
+ * A JSON or CSV text, tokenized into a flat list of nodes (in document order) without building any tree or copying the values:
+ * nodes are just offsets in the text, stored in parallel arrays.
+ * A node subtree is [node, next(node)), so collapsed sections are skipped without visiting them.
+ * CSV rows are single nodes, their cells are only split when requested.
+ * <p>
+ * Pure java (no android classes). Parsing and formatting are blocking (and interruptible), use them from a background thread.
+ */
+public class StructuredText {
+    private static final int DETECT_MAX_CHARS = 64 * 1024; // detection only looks at the beginning
+    private static final int DETECT_CSV_ROWS = 5; // rows that must have the same number of fields
+    private static final int INTERRUPT_CHECK = 64 * 1024; // chars processed between interruption checks
+
+    /** Supported formats */
+    public enum Type {
+        JSON, CSV
+    }
+
+    // node types
+    public static final byte OBJECT = 0;
+    public static final byte ARRAY = 1;
+    public static final byte VALUE = 2; // json scalar
+    public static final byte ROW = 3; // csv row
+
+    private final String text;
+    private final Type type;
+    private char separator = ','; // csv only
+
+    // nodes
+    private int count = 0;
+    private byte[] types = new byte[64];
+    private int[] depths = new int[64];
+    private int[] keyStarts = new int[64]; // -1 if no key
+    private int[] keyEnds = new int[64];
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int[] nexts = new int[64]; // first node after the subtree
+    private int[] children = new int[64]; // direct children
+
+    private StructuredText(String text, Type type) {
+        this.text = text;
+        this.type = type;
+    }
+
+    // ------------------- detect -------------------
+
+    /**
+     * Cheap detection, only looks at the edges of the text
+     *
+     * @return the format of the text, null if none
+     */
+    public static Type detect(CharSequence text) {
+        var length = text.length();
+
+        // json: starts and ends with matching brackets
+        var first = 0;
+        while (first < length && Character.isWhitespace(text.charAt(first))) first++;
+        var last = length - 1;
+        while (last > first && Character.isWhitespace(text.charAt(last))) last--;
+        if (last > first) {
+            var open = text.charAt(first);
+            var close = text.charAt(last);
+            if (open == '{' && close == '}' || open == '[' && close == ']') return Type.JSON;
+        }
+
+        // csv: the first rows have the same number of fields (more than one)
+        var limit = Math.min(length, DETECT_MAX_CHARS);
+        var separator = detectSeparator(text, limit);
+        if (separator == 0) return null;
+        var fields = -1;
+        var rows = 0;
+        var position = 0;
+        while (position < limit && rows < DETECT_CSV_ROWS) {
+            var end = rowEnd(text, position, limit);
+            if (end == limit && limit < length) break; // incomplete row
+            var rowFields = countFields(text, position, end, separator);
+            if (fields == -1) fields = rowFields;
+            else if (rowFields != fields) return null;
+            rows++;
+            position = nextRow(text, end);
+        }
+        return rows >= 2 && fields > 1 ? Type.CSV : null;
+    }
+
+    // ------------------- parse -------------------
+
+    /**
+     * Tokenizes the text (blocking)
+     *
+     * @throws ParseException        if invalid, with the offset of the error
+     * @throws CancellationException if the thread is interrupted
+     */
+    public static StructuredText parse(String text, Type type) throws ParseException {
+        var structured = new StructuredText(text, type);
+        if (type == Type.JSON) structured.parseJson();
+        else structured.parseCsv();
+        return structured;
+    }
+
+    private void parseJson() throws ParseException {
+        var length = text.length();
+        var stack = new int[16]; // open containers
+        var depth = 0;
+        var checked = 0; // position of the last interruption check
+        var keyStart = -1;
+        var keyEnd = -1;
+        var position = skipWhitespace(0);
+
+        while (true) {
+            if (position - checked > INTERRUPT_CHECK) {
+                checked = position;
+                if (Thread.interrupted()) throw new CancellationException();
+            }
+
+            // a value
+            if (position >= length) throw new ParseException("Unexpected end", position);
+            var c = text.charAt(position);
+            var closed = false; // true if the value is complete
+            if (c == '{' || c == '[') {
+                // container
+                var node = add(c == '{' ? OBJECT : ARRAY, depth == 0 ? -1 : stack[depth - 1], depth, keyStart, keyEnd, position);
+                if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+                stack[depth++] = node;
+                position = skipWhitespace(position + 1);
+                if (position < length && text.charAt(position) == (c == '{' ? '}' : ']')) {
+                    // empty
+                    closed = true;
+                } else if (c == '{') {
+                    // first key
+                    position = readKey(position);
+                    keyStart = readKeyStart;
+                    keyEnd = readKeyEnd;
+                    continue;
+                } else {
+                    keyStart = keyEnd = -1;
+                    continue;
+                }
+            } else {
+                // scalar
+                var start = position;
+                position = c == '"' ? skipString(position) : skipLiteral(position);
+                if (position == start) throw new ParseException("Unexpected '" + c + "'", position);
+                var node = add(VALUE, depth == 0 ? -1 : stack[depth - 1], depth, keyStart, keyEnd, start);
+                ends[node] = position;
+                nexts[node] = count;
+                position = skipWhitespace(position);
+            }
+
+            // close the finished containers, until a next value
+            while (true) {
+                if (closed) {
+                    // position is at the close bracket
+                    var node = stack[--depth];
+                    ends[node] = position + 1;
+                    nexts[node] = count;
+                    position = skipWhitespace(position + 1);
+                    closed = false;
+                }
+                if (depth == 0) {
+                    if (position < length) throw new ParseException("Unexpected content after the end", position);
+                    return;
+                }
+                if (position >= length) throw new ParseException("Unexpected end", position);
+
+                var top = stack[depth - 1];
+                c = text.charAt(position);
+                if (c == ',') {
+                    position = skipWhitespace(position + 1);
+                    if (types[top] == OBJECT) {
+                        position = readKey(position);
+                        keyStart = readKeyStart;
+                        keyEnd = readKeyEnd;
+                    } else {
+                        keyStart = keyEnd = -1;
+                    }
+                    break;
+                } else if (c == (types[top] == OBJECT ? '}' : ']')) {
+                    closed = true;
+                } else {
+                    throw new ParseException("Unexpected '" + c + "'", position);
+                }
+            }
+        }
+    }
+
+    // key read by readKey
+    private int readKeyStart;
+    private int readKeyEnd;
+
+    /**
+     * Reads a key and its colon
+     *
+     * @return the position of the value
+     */
+    private int readKey(int position) throws ParseException {
+        if (position >= text.length() || text.charAt(position) != '"') throw new ParseException("Expected a key", position);
+        var end = skipString(position);
+        readKeyStart = position + 1;
+        readKeyEnd = end - 1;
+        position = skipWhitespace(end);
+        if (position >= text.length() || text.charAt(position) != ':') throw new ParseException("Expected ':'", position);
+        return skipWhitespace(position + 1);
+    }
+
+    /**
+     * @return the position after the string that starts at position
+     */
+    private int skipString(int position) throws ParseException {
+        var length = text.length();
+        var i = position + 1;
+        while (i < length) {
+            var c = text.charAt(i);
+            if (c == '\\') i += 2;
+            else if (c == '"') return i + 1;
+            else i++;
+        }
+        throw new ParseException("Unterminated string", position);
+    }
+
+    /**
+     * @return the position after the literal (number, true, false, null) that starts at position
+     */
+    private int skipLiteral(int position) {
+        var length = text.length();
+        while (position < length) {
+            var c = text.charAt(position);
+            if (c == ',' || c == ']' || c == '}' || c == ':' || c == '"' || c == '{' || c == '[' || Character.isWhitespace(c)) break;
+            position++;
+        }
+        return position;
+    }
+
+    private int skipWhitespace(int position) {
+        var length = text.length();
+        while (position < length && Character.isWhitespace(text.charAt(position))) position++;
+        return position;
+    }
+
+    private void parseCsv() {
+        var length = text.length();
+        var detected = detectSeparator(text, Math.min(length, DETECT_MAX_CHARS));
+        if (detected != 0) separator = detected;
+
+        var position = 0;
+        var checked = 0;
+        while (position < length) {
+            if (position - checked > INTERRUPT_CHECK) {
+                checked = position;
+                if (Thread.interrupted()) throw new CancellationException();
+            }
+            var end = rowEnd(text, position, length);
+            var node = add(ROW, -1, 0, -1, -1, position);
+            ends[node] = end;
+            nexts[node] = count;
+            position = nextRow(text, end);
+        }
+    }
+
+    /**
+     * Appends a node (its end and next are set later), and counts it as child of its parent (-1 if none)
+     */
+    private int add(byte type, int parent, int depth, int keyStart, int keyEnd, int start) {
+        if (count == types.length) {
+            var capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+            keyStarts = Arrays.copyOf(keyStarts, capacity);
+            keyEnds = Arrays.copyOf(keyEnds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            nexts = Arrays.copyOf(nexts, capacity);
+            children = Arrays.copyOf(children, capacity);
+        }
+        var node = count++;
+        types[node] = type;
+        depths[node] = depth;
+        keyStarts[node] = keyStart;
+        keyEnds[node] = keyEnd;
+        starts[node] = start;
+        children[node] = 0;
+        if (parent >= 0) children[parent]++;
+        return node;
+    }
+
+    // ------------------- nodes -------------------
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public byte getNodeType(int node) {
+        return types[node];
+    }
+
+    public int getDepth(int node) {
+        return depths[node];
+    }
+
+    /** @return the first node after the subtree of this one */
+    public int getNext(int node) {
+        return nexts[node];
+    }
+
+    /** @return the number of direct children of a container */
+    public int getChildren(int node) {
+        return children[node];
+    }
+
+    /** @return true if the node can be expanded */
+    public boolean isExpandable(int node) {
+        return types[node] == ROW || (types[node] != VALUE && children[node] > 0);
+    }
+
+    /** @return the key of the node (raw, without quotes), null if none */
+    public String getKey(int node) {
+        return keyStarts[node] < 0 ? null : text.substring(keyStarts[node], keyEnds[node]);
+    }
+
+    /** @return the beginning of the node text (raw), up to maxChars */
+    public String getPreview(int node, int maxChars) {
+        var end = Math.min(ends[node], starts[node] + maxChars);
+        var preview = text.substring(starts[node], end);
+        return end < ends[node] ? preview + "\u2026" : preview;
+    }
+
+    /** @return the cells of a csv row (unquoted) */
+    public String[] getCells(int node) {
+        var cells = new ArrayList<String>();
+        var cell = new StringBuilder();
+        var quoted = false;
+        for (var i = starts[node]; i < ends[node]; i++) {
+            var c = text.charAt(i);
+            if (quoted) {
+                if (c != '"') cell.append(c);
+                else if (i + 1 < ends[node] && text.charAt(i + 1) == '"') cell.append(text.charAt(++i)); // escaped quote
+                else quoted = false;
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == separator) {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        cells.add(cell.toString());
+        return cells.toArray(new String[0]);
+    }
+
+    // ------------------- format -------------------
+
+    /**
+     * Reformats a valid json (blocking), keeping the values as they are
+     *
+     * @param minify if true without whitespace, indented otherwise
+     * @throws CancellationException if the thread is interrupted
+     */
+    public static String formatJson(String json, boolean minify) {
+        var length = json.length();
+        var result = new StringBuilder(minify ? length : length + length / 4);
+        var indent = 0;
+        var inString = false;
+        for (var i = 0; i < length; i++) {
+            if (i % INTERRUPT_CHECK == 0 && Thread.interrupted()) throw new CancellationException();
+            var c = json.charAt(i);
+
+            if (inString) {
+                result.append(c);
+                if (c == '\\' && i + 1 < length) result.append(json.charAt(++i));
+                else if (c == '"') inString = false;
+                continue;
+            }
+
+            if (Character.isWhitespace(c)) continue;
+            if (minify) {
+                if (c == '"') inString = true;
+                result.append(c);
+                continue;
+            }
+
+            if (c == '{' || c == '[') {
+                // empty containers stay in a single line
+                var next = i + 1;
+                while (next < length && Character.isWhitespace(json.charAt(next))) next++;
+                if (next < length && json.charAt(next) == (c == '{' ? '}' : ']')) {
+                    result.append(c).append(json.charAt(next));
+                    i = next;
+                } else {
+                    result.append(c);
+                    newLine(result, ++indent);
+                }
+            } else if (c == '}' || c == ']') {
+                newLine(result, --indent);
+                result.append(c);
+            } else if (c == ',') {
+                result.append(c);
+                newLine(result, indent);
+            } else if (c == ':') {
+                result.append(": ");
+            } else {
+                if (c == '"') inString = true;
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    private static void newLine(StringBuilder result, int indent) {
+        result.append('\n');
+        for (var i = 0; i < indent; i++) result.append("  ");
+    }
+
+    // ------------------- csv utils -------------------
+
+    /**
+     * @return the most common separator (comma, semicolon or tab) of the first row, 0 if none
+     */
+    private static char detectSeparator(CharSequence text, int limit) {
+        var best = (char) 0;
+        var bestCount = 0;
+        var end = rowEnd(text, 0, limit);
+        for (var candidate : new char[]{',', ';', '\t'}) {
+            var fields = countFields(text, 0, end, candidate);
+            if (fields - 1 > bestCount) {
+                bestCount = fields - 1;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the end of the row that starts at position (the line break, quoted ones excluded)
+     */
+    private static int rowEnd(CharSequence text, int position, int limit) {
+        var quoted = false;
+        while (position < limit) {
+            var c = text.charAt(position);
+            if (c == '"') quoted = !quoted;
+            else if (!quoted && (c == '\n' || c == '\r')) break;
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * @return the start of the row after the one that ends at end
+     */
+    private static int nextRow(CharSequence text, int end) {
+        if (end < text.length() && text.charAt(end) == '\r') end++;
+        if (end < text.length() && text.charAt(end) == '\n') end++;
+        return end;
+    }
+
+    /**
+     * @return the number of fields in [start, end)
+     */
+    private static int countFields(CharSequence text, int start, int end, char separator) {
+        var fields = 1;
+        var quoted = false;
+        for (var i = start; i < end; i++) {
+            var c = text.charAt(i);
+            if (c == '"') quoted = !quoted;
+            else if (!quoted && c == separator) fields++;
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,80 @@
+package com.trianguloy.clipboardeditor;
+
+import android.content.ClipData;
+import android.content.ClipDescription;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.os.Build;
+
+import java.util.ArrayList;
+
+/**
+ * The system clipboard, for {@link ClipboardEngine}.
+ * Note that since Android 10 the clipboard can only be read while the app has focus.
+ */
+public class SystemClipboard implements ClipboardEngine.Clipboard {
+    private final Context context; // to coerce uris
+    private final ClipboardManager clipboard;
+
+    public SystemClipboard(Context context) {
+        this.context = context.getApplicationContext();
+        clipboard = (ClipboardManager) this.context.getSystemService(Context.CLIPBOARD_SERVICE);
+    }
+
+    @Override
+    public ClipboardEngine.Clip read() {
+        var clip = clipboard.getPrimaryClip();
+        if (clip == null || clip.getItemCount() == 0) return null;
+
+        var label = clip.getDescription().getLabel();
+        var text = clip.getItemAt(0).coerceToText(context);
+        return new ClipboardEngine.Clip(label == null ? "" : label.toString(), text == null ? "" : text.toString(), SensitiveClip.isSensitive(clip.getDescription()));
+    }
+
+    @Override
+    public void write(ClipboardEngine.Clip clip) {
+        var data = ClipData.newPlainText(clip.label(), clip.text());
+        if (clip.sensitive()) SensitiveClip.mark(data);
+        clipboard.setPrimaryClip(data);
+    }
+
+    @Override
+    public void replaceText(String text) {
+        var clip = clipboard.getPrimaryClip();
+        if (clip == null || clip.getItemCount() == 0) {
+            write(new ClipboardEngine.Clip("", text));
+            return;
+        }
+
+        // same description (plus the text mime type, if the replaced item wasn't text)
+        var original = clip.getDescription();
+        var mimeTypes = new ArrayList<String>();
+        for (var i = 0; i < original.getMimeTypeCount(); i++) {
+            mimeTypes.add(original.getMimeType(i));
+        }
+        if (!original.hasMimeType(ClipDescription.MIMETYPE_TEXT_PLAIN)) mimeTypes.add(ClipDescription.MIMETYPE_TEXT_PLAIN);
+        var description = new ClipDescription(original.getLabel(), mimeTypes.toArray(new String[0]));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && original.getExtras() != null) {
+            // flags, like the sensitive one
+            description.setExtras(original.getExtras());
+        }
+
+        // the first item is replaced, the rest are kept
+        var data = new ClipData(description, new ClipData.Item(text));
+        for (var i = 1; i < clip.getItemCount(); i++) {
+            data.addItem(clip.getItemAt(i));
+        }
+        clipboard.setPrimaryClip(data);
+    }
+
+    @Override
+    public void clear() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            // the easy way, just call 'clear'
+            clipboard.clearPrimaryClip();
+        } else {
+            // the not-so-easy way, manually set as empty
+            clipboard.setPrimaryClip(ClipData.newPlainText("", ""));
+        }
+    }
+}
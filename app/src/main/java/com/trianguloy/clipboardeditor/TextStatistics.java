@@ -0,0 +1,96 @@
+package com.trianguloy.clipboardeditor;
+
+/**
+ * Lines, words and length of a text, updated incrementally.
+ * Instead of splitting the whole text on each change, only the changed region (and its word boundaries) is rescanned.
+ * Call {@link #beforeChange} and {@link #afterChange} with the same values a TextWatcher receives.
+ * <p>
+ * Pure java (no android classes) so it can be used outside the app.
+ */
+public class TextStatistics {
+
+    private int length = 0; // total chars
+    private int newlines = 0; // number of '\n'
+    private int words = 0; // number of word starts
+
+    /**
+     * Recounts everything from scratch
+     */
+    public void reset(CharSequence text) {
+        length = text.length();
+        newlines = countNewlines(text, 0, length);
+        words = countWordStarts(text, 0, length);
+    }
+
+    /**
+     * Call before 'count' chars starting at 'start' are replaced (TextWatcher#beforeTextChanged)
+     */
+    public void beforeChange(CharSequence text, int start, int count) {
+        newlines -= countNewlines(text, start, start + count);
+        words -= countWordStarts(text, start, start + count);
+        length -= count;
+    }
+
+    /**
+     * Call after 'count' chars starting at 'start' were inserted (TextWatcher#onTextChanged)
+     */
+    public void afterChange(CharSequence text, int start, int count) {
+        newlines += countNewlines(text, start, start + count);
+        words += countWordStarts(text, start, start + count);
+        length += count;
+    }
+
+    /**
+     * Same as "text.isEmpty() ? 0 : text.split("\\n", -1).length"
+     */
+    public int getLines() {
+        return length == 0 ? 0 : newlines + 1;
+    }
+
+    /**
+     * Same as "text.trim().isEmpty() ? 0 : text.trim().split("\\s+").length"
+     * (except for words made only of control chars at the start or end of the text, which trim() would remove)
+     */
+    public int getWords() {
+        return words;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    // ------------------- count -------------------
+
+    /**
+     * @return number of '\n' in [from, to)
+     */
+    private static int countNewlines(CharSequence text, int from, int to) {
+        var count = 0;
+        for (var i = from; i < to; i++) {
+            if (text.charAt(i) == '\n') count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return number of word starts in [from, to]. The char at 'to' is included because its 'start' status depends on the previous char
+     */
+    private static int countWordStarts(CharSequence text, int from, int to) {
+        var last = Math.min(to, text.length() - 1);
+        var count = 0;
+        var previousIsSpace = from == 0 || isSpace(text.charAt(from - 1));
+        for (var i = from; i <= last; i++) {
+            var isSpace = isSpace(text.charAt(i));
+            if (previousIsSpace && !isSpace) count++;
+            previousIsSpace = isSpace;
+        }
+        return count;
+    }
+
+    /**
+     * Same as the regex "\s" class
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
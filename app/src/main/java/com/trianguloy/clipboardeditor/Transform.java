@@ -0,0 +1,45 @@
+package com.trianguloy.clipboardeditor;
+
+import java.util.Locale;
+
+/**
+ * Quick text transformations.
+ * Pure java (no android classes).
+ */
+public enum Transform {
+    TRIM {
+        @Override
+        public String apply(String text) {
+            return text.trim();
+        }
+    },
+    UPPERCASE {
+        @Override
+        public String apply(String text) {
+            return text.toUpperCase(Locale.getDefault());
+        }
+    },
+    LOWERCASE {
+        @Override
+        public String apply(String text) {
+            return text.toLowerCase(Locale.getDefault());
+        }
+    },
+    ;
+
+    /**
+     * @return the transformed text
+     */
+    public abstract String apply(String text);
+
+    /**
+     * @return the transform with that name, or null if there is none
+     */
+    public static Transform find(String name) {
+        if (name == null) return null;
+        for (var transform : values()) {
+            if (transform.name().equals(name)) return transform;
+        }
+        return null;
+    }
+}
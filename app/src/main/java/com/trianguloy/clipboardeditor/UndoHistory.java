@@ -0,0 +1,181 @@
+package com.trianguloy.clipboardeditor;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Undo/redo of text changes, stored as deltas (position, removed text, inserted text) as reported by the text watchers.
+ * Consecutive typing is coalesced into a single step, and changes made in a group (like an external replacement of both inputs) are undone together.
+ * The stored texts are limited: the oldest steps are dropped when exceeded.
+ * <p>
+ * Changes are identified by a field (to track multiple inputs). Must be used from a single thread.
+ */
+public class UndoHistory {
+    private static final long COALESCE_NANOS = 1_000_000_000L; // typing after this time is a new step
+
+    /** Where the changes are undone/redone */
+    public interface Target {
+        /** Replaces [start, end) of the field with the text */
+        void replace(int field, int start, int end, String text);
+    }
+
+    /**
+     * A change
+     *
+     * @param group  changes with the same group are a single step
+     * @param typing if it can be coalesced with the next one
+     * @param time   when it was done (nanoTime)
+     */
+    private record Edit(int field, int start, String removed, String inserted, int group, boolean typing, long time) {
+        int chars() {
+            return removed.length() + inserted.length();
+        }
+    }
+
+    private final Deque<Edit> undo = new ArrayDeque<>(); // newest first
+    private final Deque<Edit> redo = new ArrayDeque<>(); // next first
+    private long chars = 0; // stored in both
+    private long maxChars = Long.MAX_VALUE;
+
+    private int groups = 0; // last group used
+    private boolean grouping = false; // if the changes are currently grouped
+    private boolean applying = false; // true while undoing/redoing (those changes aren't recorded)
+    private String removed = ""; // of the change being done
+
+    /**
+     * Sets the limit of stored chars, dropping the oldest steps if exceeded
+     */
+    public void setMaxChars(long maxChars) {
+        this.maxChars = maxChars;
+        trim();
+    }
+
+    // ------------------- record -------------------
+
+    /** To call from beforeTextChanged */
+    public void beforeChange(CharSequence text, int start, int count) {
+        if (applying) return;
+        removed = text.subSequence(start, start + count).toString();
+    }
+
+    /** To call from onTextChanged */
+    public void afterChange(int field, CharSequence text, int start, int count) {
+        if (applying) return;
+        var inserted = text.subSequence(start, start + count).toString();
+        if (removed.isEmpty() && inserted.isEmpty()) return;
+        var now = System.nanoTime();
+        var typing = !grouping && removed.length() + inserted.length() == 1;
+
+        // new changes make the redo steps obsolete
+        for (var edit : redo) chars -= edit.chars();
+        redo.clear();
+
+        // coalesce with the previous typing
+        var last = undo.peekFirst();
+        if (typing && last != null && last.typing && last.field == field && now - last.time < COALESCE_NANOS) {
+            if (removed.isEmpty() && last.removed.isEmpty() && start == last.start + last.inserted.length()) {
+                // insert after insert
+                replaceLast(new Edit(field, last.start, "", last.inserted + inserted, last.group, true, now));
+                return;
+            }
+            if (inserted.isEmpty() && last.inserted.isEmpty() && start + removed.length() == last.start) {
+                // delete before delete (backspace)
+                replaceLast(new Edit(field, start, removed + last.removed, "", last.group, true, now));
+                return;
+            }
+        }
+
+        var edit = new Edit(field, start, removed, inserted, grouping ? groups : ++groups, typing, now);
+        undo.addFirst(edit);
+        chars += edit.chars();
+        trim();
+    }
+
+    /**
+     * From now on, changes are a single step (until {@link #endGroup()})
+     */
+    public void beginGroup() {
+        if (grouping) return;
+        grouping = true;
+        groups++;
+    }
+
+    /**
+     * Ends the current group
+     */
+    public void endGroup() {
+        grouping = false;
+    }
+
+    // ------------------- apply -------------------
+
+    public boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    /**
+     * Reverts the last step
+     */
+    public void undo(Target target) {
+        var last = undo.peekFirst();
+        if (last == null) return;
+        applying = true;
+        while (!undo.isEmpty() && undo.peekFirst().group == last.group) {
+            var edit = undo.removeFirst();
+            target.replace(edit.field, edit.start, edit.start + edit.inserted.length(), edit.removed);
+            redo.addFirst(edit);
+        }
+        applying = false;
+    }
+
+    /**
+     * Repeats the last undone step
+     */
+    public void redo(Target target) {
+        var next = redo.peekFirst();
+        if (next == null) return;
+        applying = true;
+        while (!redo.isEmpty() && redo.peekFirst().group == next.group) {
+            var edit = redo.removeFirst();
+            target.replace(edit.field, edit.start, edit.start + edit.removed.length(), edit.inserted);
+            // not coalesced anymore
+            undo.addFirst(new Edit(edit.field, edit.start, edit.removed, edit.inserted, edit.group, false, edit.time));
+        }
+        applying = false;
+    }
+
+    /**
+     * Forgets everything (when the changes can't be undone anymore, like when the text is replaced without notifying)
+     */
+    public void clear() {
+        undo.clear();
+        redo.clear();
+        chars = 0;
+    }
+
+    // ------------------- utils -------------------
+
+    private void replaceLast(Edit edit) {
+        chars -= undo.removeFirst().chars();
+        undo.addFirst(edit);
+        chars += edit.chars();
+        trim();
+    }
+
+    /**
+     * Drops the oldest steps (complete groups) until the limit is satisfied
+     */
+    private void trim() {
+        while (chars > maxChars && !undo.isEmpty()) {
+            var group = undo.peekLast().group;
+            while (!undo.isEmpty() && undo.peekLast().group == group) {
+                chars -= undo.removeLast().chars();
+            }
+        }
+        if (chars > maxChars) clear();
+    }
+}
@@ -0,0 +1,71 @@
+package com.trianguloy.clipboardeditor;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+public class ChunkedTextTest {
+
+    @Test
+    public void snapshotsDontChange() {
+        var random = new Random(1);
+        var expected = new StringBuilder(generate(random, 100_000)); // several chunks
+        var text = new ChunkedText(expected);
+
+        var snapshots = new ArrayList<CharSequence>();
+        var contents = new ArrayList<String>();
+        for (var change = 0; change < 200; change++) {
+            if (change % 20 == 0) {
+                snapshots.add(text.snapshot());
+                contents.add(expected.toString());
+            }
+
+            // replace a random range by a random text, like an edit (sometimes a big one, to split chunks)
+            var start = random.nextInt(expected.length() + 1);
+            var end = start + random.nextInt(Math.min(expected.length() - start, 50_000) + 1);
+            var replacement = generate(random, random.nextInt(10) == 0 ? 40_000 : random.nextInt(20));
+            text.replace(start, end, replacement, 0, replacement.length());
+            expected.replace(start, end, replacement);
+            assertEquals(expected.toString(), text.toString());
+        }
+
+        for (var i = 0; i < snapshots.size(); i++) {
+            check(contents.get(i), snapshots.get(i), random);
+        }
+        check(expected.toString(), text.snapshot(), random);
+    }
+
+    /**
+     * Compares the snapshot with its expected content, with all its accesses
+     */
+    private static void check(String expected, CharSequence snapshot, Random random) {
+        assertEquals(expected.length(), snapshot.length());
+        assertEquals(expected, snapshot.toString());
+
+        // sequential
+        var chars = new StringBuilder();
+        for (var i = 0; i < snapshot.length(); i++) {
+            chars.append(snapshot.charAt(i));
+        }
+        assertEquals(expected, chars.toString());
+
+        // random
+        for (var i = 0; i < 1000; i++) {
+            var start = random.nextInt(expected.length() + 1);
+            var end = start + random.nextInt(expected.length() - start + 1);
+            assertEquals(expected.substring(start, end), snapshot.subSequence(start, end).toString());
+            if (start < expected.length()) assertEquals(expected.charAt(start), snapshot.charAt(start));
+        }
+    }
+
+    private static String generate(Random random, int length) {
+        var text = new StringBuilder(length);
+        for (var i = 0; i < length; i++) {
+            text.append((char) ('a' + random.nextInt(26)));
+        }
+        return text.toString();
+    }
+}
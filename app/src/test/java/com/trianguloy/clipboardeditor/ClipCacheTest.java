@@ -0,0 +1,131 @@
+package com.trianguloy.clipboardeditor;
+
+import static com.trianguloy.clipboardeditor.ClipCache.MAX_PERSISTENT;
+import static com.trianguloy.clipboardeditor.ClipCache.MAX_TEMPORARY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+public class ClipCacheTest {
+
+    @Test
+    public void writeAndRead() throws IOException {
+        var root = createRoot();
+        var text = "text \u00F1 \uD83D\uDE00\n".repeat(10_000); // non-ascii and bigger than the read buffer
+
+        var temporary = ClipCache.write(root, text, true);
+        var persistent = ClipCache.write(root, "other", false);
+
+        assertEquals(text, ClipCache.read(root, temporary, true));
+        assertEquals("other", ClipCache.read(root, persistent, false));
+        assertEquals(text, ClipCache.read(root, temporary, true)); // reading doesn't delete
+    }
+
+    @Test
+    public void kindsAreApart() throws IOException {
+        var root = createRoot();
+
+        var temporary = ClipCache.write(root, "temporary", true);
+        var persistent = ClipCache.write(root, "persistent", false);
+
+        assertNull(ClipCache.read(root, temporary, false));
+        assertNull(ClipCache.read(root, persistent, true));
+        ClipCache.delete(root, temporary, false);
+        assertEquals("temporary", ClipCache.read(root, temporary, true));
+    }
+
+    @Test
+    public void delete() throws IOException {
+        var root = createRoot();
+        var key = ClipCache.write(root, "text", false);
+
+        ClipCache.delete(root, key, false);
+        assertNull(ClipCache.read(root, key, false));
+        ClipCache.delete(root, key, false); // already deleted, nothing happens
+    }
+
+    @Test
+    public void backgroundWrite() throws IOException {
+        var root = createRoot();
+        var text = "a".repeat(1_000_000);
+
+        // reading waits for the write
+        var key = ClipCache.writeInBackground(root, text, true);
+        assertEquals(text, ClipCache.read(root, key, true));
+
+        // deleting while writing removes it after
+        key = ClipCache.writeInBackground(root, text, true);
+        ClipCache.delete(root, key, true);
+        ClipCache.read(root, ClipCache.writeInBackground(root, "", true), true); // the delete was queued before this one
+        assertNull(ClipCache.read(root, key, true));
+    }
+
+    @Test
+    public void trim() throws IOException {
+        var root = createRoot();
+        var persistent = ClipCache.write(root, "persistent", false);
+
+        // more temporary files than allowed, the oldest are deleted
+        var keys = new ArrayList<String>();
+        for (var i = 0; i < MAX_TEMPORARY + 5; i++) {
+            var key = ClipCache.write(root, "temporary " + i, true);
+            // distinct modification times, as files written together may have the same one
+            assertTrue(new File(new File(new File(root, "clips"), "temporary"), key).setLastModified(1000L * i));
+            keys.add(key);
+        }
+        assertEquals(MAX_TEMPORARY, count(root, "temporary"));
+        for (var i = 0; i < keys.size(); i++) {
+            assertEquals(i < keys.size() - MAX_TEMPORARY ? null : "temporary " + i, ClipCache.read(root, keys.get(i), true));
+        }
+
+        // the other kind is kept
+        assertEquals("persistent", ClipCache.read(root, persistent, false));
+
+        // the newest file is kept even if all have the same modification time
+        for (var i = 0; i < MAX_PERSISTENT + 5; i++) {
+            var key = ClipCache.write(root, "persistent " + i, false);
+            assertEquals("persistent " + i, ClipCache.read(root, key, false));
+        }
+        assertEquals(MAX_PERSISTENT, count(root, "persistent"));
+    }
+
+    @Test
+    public void invalidKeys() throws IOException {
+        var root = createRoot();
+        ClipCache.write(root, "text", false);
+
+        assertNull(ClipCache.read(root, null, false));
+        assertNull(ClipCache.read(root, "", false));
+        assertNull(ClipCache.read(root, "missing", false));
+        assertNull(ClipCache.read(root, "../persistent", true));
+        assertNull(ClipCache.read(root, "..", false));
+        ClipCache.delete(root, "..", false);
+        assertEquals(1, count(root, "persistent"));
+    }
+
+    // ------------------- utils -------------------
+
+    /**
+     * A new empty cache directory
+     */
+    private static File createRoot() throws IOException {
+        var root = Files.createTempDirectory("cache").toFile();
+        root.deleteOnExit();
+        return root;
+    }
+
+    /**
+     * Number of files of the given kind
+     */
+    private static int count(File root, String kind) {
+        var files = new File(new File(root, "clips"), kind).listFiles();
+        return files == null ? 0 : files.length;
+    }
+}
@@ -0,0 +1,45 @@
+package com.trianguloy.clipboardeditor;
+
+import static com.trianguloy.clipboardeditor.ClipTransport.INLINE_MAX_CHARS;
+import static com.trianguloy.clipboardeditor.ClipTransport.fitsInline;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class ClipTransportTest {
+
+    @Test
+    public void singleText() {
+        assertTrue(fitsInline(List.of(text(INLINE_MAX_CHARS - 1))));
+        assertTrue(fitsInline(List.of(text(INLINE_MAX_CHARS))));
+        assertFalse(fitsInline(List.of(text(INLINE_MAX_CHARS + 1))));
+    }
+
+    @Test
+    public void allTextsTogether() {
+        // each one is small, but not all together
+        var half = INLINE_MAX_CHARS / 2;
+        assertTrue(fitsInline(List.of(text(half), text(INLINE_MAX_CHARS - half))));
+        assertFalse(fitsInline(List.of(text(half), text(INLINE_MAX_CHARS - half + 1))));
+        assertFalse(fitsInline(List.of(text(half), text(half), text(half))));
+
+        // label and item
+        assertTrue(fitsInline(List.of("label", text(INLINE_MAX_CHARS - 5))));
+        assertFalse(fitsInline(List.of("label", text(INLINE_MAX_CHARS - 4))));
+    }
+
+    @Test
+    public void missingTexts() {
+        assertTrue(fitsInline(List.of()));
+        assertTrue(fitsInline(Arrays.asList(null, text(INLINE_MAX_CHARS), null)));
+        assertFalse(fitsInline(Arrays.asList(null, text(INLINE_MAX_CHARS), null, "x")));
+    }
+
+    private static String text(int length) {
+        return "a".repeat(length);
+    }
+}
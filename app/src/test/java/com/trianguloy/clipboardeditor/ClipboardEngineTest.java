@@ -0,0 +1,98 @@
+package com.trianguloy.clipboardeditor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ClipboardEngineTest {
+
+    /** A clipboard in memory: a label, the sensitive flag and the item texts (null if empty) */
+    private static class FakeClipboard implements ClipboardEngine.Clipboard {
+        String label = "";
+        boolean sensitive = false;
+        List<String> items = null;
+        int changes = 0; // writes and clears
+
+        @Override
+        public ClipboardEngine.Clip read() {
+            return items == null ? null : new ClipboardEngine.Clip(label, items.get(0), sensitive);
+        }
+
+        @Override
+        public void write(ClipboardEngine.Clip clip) {
+            label = clip.label();
+            sensitive = clip.sensitive();
+            items = new ArrayList<>(List.of(clip.text()));
+            changes++;
+        }
+
+        @Override
+        public void replaceText(String text) {
+            items.set(0, text);
+            changes++;
+        }
+
+        @Override
+        public void clear() {
+            label = "";
+            sensitive = false;
+            items = null;
+            changes++;
+        }
+    }
+
+    @Test
+    public void transformKeepsTheClip() {
+        var clipboard = new FakeClipboard();
+        clipboard.label = "label";
+        clipboard.sensitive = true;
+        clipboard.items = new ArrayList<>(List.of("  first ", "second"));
+
+        var result = new ClipboardEngine(clipboard).transform(Transform.TRIM);
+
+        assertEquals(new ClipboardEngine.Clip("label", "first", true), result);
+        assertEquals("label", clipboard.label);
+        assertTrue(clipboard.sensitive);
+        assertEquals(List.of("first", "second"), clipboard.items);
+        assertEquals(1, clipboard.changes);
+    }
+
+    @Test
+    public void transformWithoutChanges() {
+        var clipboard = new FakeClipboard();
+        clipboard.items = new ArrayList<>(List.of("text"));
+
+        var result = new ClipboardEngine(clipboard).transform(Transform.TRIM);
+
+        assertEquals(new ClipboardEngine.Clip("", "text", false), result);
+        assertEquals(0, clipboard.changes);
+    }
+
+    @Test
+    public void transformEmpty() {
+        var clipboard = new FakeClipboard();
+
+        assertNull(new ClipboardEngine(clipboard).transform(Transform.UPPERCASE));
+        assertNull(clipboard.items);
+        assertEquals(0, clipboard.changes);
+    }
+
+    @Test
+    public void writeAndClear() {
+        var clipboard = new FakeClipboard();
+        var engine = new ClipboardEngine(clipboard);
+
+        engine.write(new ClipboardEngine.Clip("label", "text"));
+        assertEquals(new ClipboardEngine.Clip("label", "text", false), engine.read());
+
+        engine.clear();
+        assertNull(engine.read());
+        assertFalse(clipboard.sensitive);
+    }
+}
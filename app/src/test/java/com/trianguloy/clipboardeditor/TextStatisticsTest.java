@@ -0,0 +1,62 @@
+package com.trianguloy.clipboardeditor;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class TextStatisticsTest {
+    private static final String CHARS = "ab \n\t\r\u000B\f"; // letters and every "\s" char
+
+    @Test
+    public void reset() {
+        var random = new Random(1);
+        for (var i = 0; i < 2000; i++) {
+            var text = generate(random, random.nextInt(50));
+            var statistics = new TextStatistics();
+            statistics.reset(text);
+            check(text, statistics);
+        }
+    }
+
+    @Test
+    public void incremental() {
+        var random = new Random(2);
+        for (var i = 0; i < 200; i++) {
+            var text = new StringBuilder(generate(random, random.nextInt(50)));
+            var statistics = new TextStatistics();
+            statistics.reset(text);
+
+            for (var change = 0; change < 50; change++) {
+                // replace a random range by a random text, like an edit
+                var start = random.nextInt(text.length() + 1);
+                var count = random.nextInt(text.length() - start + 1);
+                var replacement = generate(random, random.nextInt(10));
+
+                statistics.beforeChange(text, start, count);
+                text.replace(start, start + count, replacement);
+                statistics.afterChange(text, start, replacement.length());
+                check(text.toString(), statistics);
+            }
+        }
+    }
+
+    /**
+     * Compares with the split results
+     */
+    private static void check(String text, TextStatistics statistics) {
+        var message = "'" + text + "'";
+        assertEquals(message, text.length(), statistics.getLength());
+        assertEquals(message, text.isEmpty() ? 0 : text.split("\\n", -1).length, statistics.getLines());
+        assertEquals(message, text.trim().isEmpty() ? 0 : text.trim().split("\\s+").length, statistics.getWords());
+    }
+
+    private static String generate(Random random, int length) {
+        var text = new StringBuilder(length);
+        for (var i = 0; i < length; i++) {
+            text.append(CHARS.charAt(random.nextInt(CHARS.length())));
+        }
+        return text.toString();
+    }
+}
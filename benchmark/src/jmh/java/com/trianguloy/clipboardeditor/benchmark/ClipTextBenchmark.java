@@ -0,0 +1,74 @@
+package com.trianguloy.clipboardeditor.benchmark;
+
+import com.trianguloy.clipboardeditor.ChunkedText;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the text conversions done when syncing with the clipboard
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ClipTextBenchmark {
+
+    @Param({"1024", "1048576", "52428800"}) // 1KB, 1MB, 50MB
+    public int length;
+
+    private String content; // the clip text
+    private StringBuilder editable; // the input, with the same text
+    private ChunkedText large; // the input in large mode, with the same text
+    private final StringBuilder label = new StringBuilder("label");
+
+    @Setup
+    public void setup() {
+        content = Texts.generate(length);
+        editable = new StringBuilder(content);
+        large = new ChunkedText(content);
+    }
+
+    /**
+     * clipToInput: 'toStringNonNull(v_content.getText()).equals(content)'
+     */
+    @Benchmark
+    public boolean toStringEquals() {
+        return toStringNonNull(editable).equals(content);
+    }
+
+    /**
+     * clipToInput in large mode: comparison without materializing the input
+     */
+    @Benchmark
+    public boolean chunkedContentEquals() {
+        return large.contentEquals(content);
+    }
+
+    /**
+     * inputAsPrimaryClip: the texts given to 'ClipData.newPlainText(label, content)'
+     */
+    @Benchmark
+    public int clipText() {
+        return label.toString().length() + editable.toString().length();
+    }
+
+    /**
+     * inputAsPrimaryClip in large mode
+     */
+    @Benchmark
+    public int chunkedClipText() {
+        return label.toString().length() + large.toString().length();
+    }
+
+    /**
+     * Same as Editor#toStringNonNull
+     */
+    private static String toStringNonNull(Object object) {
+        return object == null ? "" : object.toString();
+    }
+}
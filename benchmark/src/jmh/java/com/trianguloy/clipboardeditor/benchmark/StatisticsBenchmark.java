@@ -0,0 +1,73 @@
+package com.trianguloy.clipboardeditor.benchmark;
+
+import com.trianguloy.clipboardeditor.TextStatistics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-keystroke cost of the content statistics: the previous split-based computation vs the incremental one
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StatisticsBenchmark {
+
+    @Param({"1024", "1048576", "52428800"}) // 1KB, 1MB, 50MB
+    public int length;
+
+    private StringBuilder text; // the 'editable'
+    private final TextStatistics statistics = new TextStatistics();
+    private int position; // where the keystroke is typed
+
+    @Setup
+    public void setup() {
+        text = new StringBuilder(Texts.generate(length));
+        statistics.reset(text);
+        position = length / 2;
+    }
+
+    /**
+     * What the editor did on each keystroke before the incremental statistics
+     */
+    @Benchmark
+    public int split() {
+        var string = text.toString();
+        var trimmed = string.trim();
+        var lines = string.isEmpty() ? 0 : string.split("\\n", -1).length;
+        var words = trimmed.isEmpty() ? 0 : trimmed.split("\\s+").length;
+        return lines + words + string.length();
+    }
+
+    /**
+     * What the editor does now on each keystroke (type a char, then delete it, to keep the text constant)
+     */
+    @Benchmark
+    public int incremental() {
+        // insert
+        statistics.beforeChange(text, position, 0);
+        text.insert(position, 'x');
+        statistics.afterChange(text, position, 1);
+
+        // delete
+        statistics.beforeChange(text, position, 1);
+        text.deleteCharAt(position);
+        statistics.afterChange(text, position, 0);
+
+        return statistics.getLines() + statistics.getWords() + statistics.getLength();
+    }
+
+    /**
+     * Full recount (when the content is replaced)
+     */
+    @Benchmark
+    public int reset() {
+        statistics.reset(text);
+        return statistics.getLines() + statistics.getWords() + statistics.getLength();
+    }
+}
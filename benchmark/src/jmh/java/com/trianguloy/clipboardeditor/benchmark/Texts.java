@@ -0,0 +1,24 @@
+package com.trianguloy.clipboardeditor.benchmark;
+
+import java.util.Random;
+
+/**
+ * Benchmark inputs
+ */
+class Texts {
+
+    /**
+     * @return a pseudo-random text (words, spaces and newlines, like a log dump) of the given length
+     */
+    static String generate(int length) {
+        var random = new Random(length);
+        var builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            var r = random.nextInt(100);
+            if (r < 15) builder.append(' ');
+            else if (r < 17) builder.append('\n');
+            else builder.append((char) ('a' + random.nextInt(26)));
+        }
+        return builder.toString();
+    }
+}